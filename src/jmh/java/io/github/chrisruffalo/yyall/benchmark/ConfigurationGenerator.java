@@ -0,0 +1,62 @@
+package io.github.chrisruffalo.yyall.benchmark;
+
+/**
+ * Generates YAML configurations of a given size for the benchmarks. Every generated document has the same
+ * fixed sections (settings, chain, list) so the same keys can be benchmarked at every size and then a
+ * "data" section that is filled out until the document has the requested number of keys. One in ten data
+ * values references another data value.
+ */
+public final class ConfigurationGenerator {
+
+    public static final int CHAIN_LENGTH = 16;
+
+    public static final int SECTION_SIZE = 100;
+
+    private ConfigurationGenerator() {
+
+    }
+
+    public static String generate(final int keys) {
+        final StringBuilder builder = new StringBuilder(keys * 32);
+
+        builder.append("settings:\n");
+        builder.append("  name: benchmark\n");
+        builder.append("  host: localhost\n");
+        builder.append("  port: 8080\n");
+        builder.append("  url: http://${settings.host}:${settings.port}/api\n");
+        builder.append("  endpoint:\n");
+        builder.append("    path: /api\n");
+        builder.append("    timeout: 30\n");
+
+        // a chain of references that has to be followed all the way to the end
+        builder.append("chain:\n");
+        for (int i = 0; i < CHAIN_LENGTH; i++) {
+            builder.append("  c").append(i).append(": ${chain.c").append(i + 1).append("}\n");
+        }
+        builder.append("  c").append(CHAIN_LENGTH).append(": end\n");
+
+        builder.append("list:\n");
+        builder.append("  - zero\n");
+        builder.append("  - ${settings.name}\n");
+        builder.append("  - - a\n");
+        builder.append("    - b\n");
+        builder.append("    - c\n");
+
+        builder.append("data:\n");
+        for (int key = 0; key < keys; key++) {
+            final int section = key / SECTION_SIZE;
+            final int index = key % SECTION_SIZE;
+            if (index == 0) {
+                builder.append("  s").append(section).append(":\n");
+            }
+            builder.append("    k").append(index).append(": ");
+            if (index % 10 == 9) {
+                builder.append("${data.s").append(section).append(".k").append(index - 1).append("}-ref\n");
+            } else {
+                builder.append("value-").append(section).append('-').append(index).append('\n');
+            }
+        }
+
+        return builder.toString();
+    }
+}
@@ -0,0 +1,47 @@
+package io.github.chrisruffalo.yyall.benchmark;
+
+import io.github.chrisruffalo.yyall.YyallConfiguration;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Shared benchmark state: a generated configuration of the given number of keys both as text, as a file
+ * on disk, and as a loaded configuration.
+ */
+@State(Scope.Benchmark)
+public class ConfigurationState {
+
+    @Param({"10", "1000", "100000"})
+    public int keys;
+
+    public byte[] yaml;
+
+    public Path path;
+
+    public YyallConfiguration configuration;
+
+    public YyallConfiguration cachedConfiguration;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        this.yaml = ConfigurationGenerator.generate(this.keys).getBytes(StandardCharsets.UTF_8);
+        this.path = Files.createTempFile("yyall-benchmark-", ".yml");
+        Files.write(this.path, this.yaml);
+        this.configuration = YyallConfiguration.load(this.path.toString());
+        this.cachedConfiguration = this.configuration.withCache(1024);
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() throws IOException {
+        Files.deleteIfExists(this.path);
+    }
+}
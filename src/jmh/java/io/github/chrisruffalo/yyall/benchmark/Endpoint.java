@@ -0,0 +1,24 @@
+package io.github.chrisruffalo.yyall.benchmark;
+
+public class Endpoint {
+
+    private String path;
+
+    private int timeout;
+
+    public String getPath() {
+        return path;
+    }
+
+    public void setPath(String path) {
+        this.path = path;
+    }
+
+    public int getTimeout() {
+        return timeout;
+    }
+
+    public void setTimeout(int timeout) {
+        this.timeout = timeout;
+    }
+}
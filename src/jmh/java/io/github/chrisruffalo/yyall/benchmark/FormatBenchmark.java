@@ -0,0 +1,39 @@
+package io.github.chrisruffalo.yyall.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class FormatBenchmark {
+
+    @Benchmark
+    public String formatNoTokens(final ConfigurationState state) {
+        return state.configuration.format("there are no tokens in this string");
+    }
+
+    @Benchmark
+    public String formatSimple(final ConfigurationState state) {
+        return state.configuration.format("name: ${settings.name} url: ${settings.url}");
+    }
+
+    @Benchmark
+    public String formatFallback(final ConfigurationState state) {
+        return state.configuration.format("${ opts.url | missing.url | settings.url | 'http://localhost' }");
+    }
+
+    @Benchmark
+    public String formatNestedLiteral(final ConfigurationState state) {
+        return state.configuration.format("${ opts.url | 'http://${settings.host}:${ opts.port | '9090' }/api' }");
+    }
+}
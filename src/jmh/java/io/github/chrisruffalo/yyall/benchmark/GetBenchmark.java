@@ -0,0 +1,44 @@
+package io.github.chrisruffalo.yyall.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class GetBenchmark {
+
+    @Benchmark
+    public String getPlain(final ConfigurationState state) {
+        return state.configuration.get("settings.name");
+    }
+
+    @Benchmark
+    public String getReference(final ConfigurationState state) {
+        return state.configuration.get("settings.url");
+    }
+
+    @Benchmark
+    public String getChain(final ConfigurationState state) {
+        return state.configuration.get("chain.c0");
+    }
+
+    @Benchmark
+    public String getIndexed(final ConfigurationState state) {
+        return state.configuration.get("list[2][1]");
+    }
+
+    @Benchmark
+    public String getCachedChain(final ConfigurationState state) {
+        return state.cachedConfiguration.get("chain.c0");
+    }
+}
@@ -0,0 +1,31 @@
+package io.github.chrisruffalo.yyall.benchmark;
+
+import io.github.chrisruffalo.yyall.YyallConfiguration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class LoadBenchmark {
+
+    @Benchmark
+    public YyallConfiguration loadPath(final ConfigurationState state) {
+        return YyallConfiguration.load(state.path.toString());
+    }
+
+    @Benchmark
+    public YyallConfiguration loadStream(final ConfigurationState state) {
+        return YyallConfiguration.load(new ByteArrayInputStream(state.yaml));
+    }
+}
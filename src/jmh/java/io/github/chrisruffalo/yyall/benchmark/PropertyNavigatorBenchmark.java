@@ -0,0 +1,71 @@
+package io.github.chrisruffalo.yyall.benchmark;
+
+import io.github.chrisruffalo.yyall.bean.PropertyNavigator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.representer.Representer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class PropertyNavigatorBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Trees {
+
+        public Object map;
+
+        public SettingsRoot pojo;
+
+        @Setup(Level.Trial)
+        public void setup(final ConfigurationState state) {
+            final String yaml = new String(state.yaml, StandardCharsets.UTF_8);
+            this.map = new Yaml().load(yaml);
+
+            // only the settings are bound so the other sections need to be skipped
+            final Representer representer = new Representer();
+            representer.getPropertyUtils().setSkipMissingProperties(true);
+            this.pojo = new Yaml(representer).loadAs(yaml, SettingsRoot.class);
+        }
+    }
+
+    @Benchmark
+    public Object mapProperty(final Trees trees) {
+        return PropertyNavigator.getProperty(trees.map, "settings.endpoint.path");
+    }
+
+    @Benchmark
+    public Object mapDataProperty(final Trees trees) {
+        return PropertyNavigator.getProperty(trees.map, "data.s0.k5");
+    }
+
+    @Benchmark
+    public Object mapMissingProperty(final Trees trees) {
+        return PropertyNavigator.getProperty(trees.map, "settings.missing.path");
+    }
+
+    @Benchmark
+    public Object listProperty(final Trees trees) {
+        return PropertyNavigator.getProperty(trees.map, "list[2][1]");
+    }
+
+    @Benchmark
+    public Object pojoProperty(final Trees trees) {
+        return PropertyNavigator.getProperty(trees.pojo, "settings.endpoint.path");
+    }
+}
@@ -0,0 +1,34 @@
+package io.github.chrisruffalo.yyall.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ResolveBenchmark {
+
+    @Benchmark
+    public String resolveString(final ConfigurationState state) {
+        return state.configuration.resolveString();
+    }
+
+    @Benchmark
+    public Object resolve(final ConfigurationState state) {
+        return state.configuration.resolve();
+    }
+
+    @Benchmark
+    public SettingsRoot resolveAs(final ConfigurationState state) {
+        return state.configuration.resolveAs(SettingsRoot.class);
+    }
+}
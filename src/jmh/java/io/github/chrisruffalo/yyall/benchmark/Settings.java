@@ -0,0 +1,57 @@
+package io.github.chrisruffalo.yyall.benchmark;
+
+/**
+ * Bean bound to the "settings" section of a generated configuration.
+ */
+public class Settings {
+
+    private String name;
+
+    private String host;
+
+    private int port;
+
+    private String url;
+
+    private Endpoint endpoint;
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public void setHost(String host) {
+        this.host = host;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public void setPort(int port) {
+        this.port = port;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public void setUrl(String url) {
+        this.url = url;
+    }
+
+    public Endpoint getEndpoint() {
+        return endpoint;
+    }
+
+    public void setEndpoint(Endpoint endpoint) {
+        this.endpoint = endpoint;
+    }
+}
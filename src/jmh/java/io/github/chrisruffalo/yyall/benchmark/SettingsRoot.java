@@ -0,0 +1,17 @@
+package io.github.chrisruffalo.yyall.benchmark;
+
+/**
+ * Binding target for a whole generated configuration, only the settings section is bound and the rest is skipped.
+ */
+public class SettingsRoot {
+
+    private Settings settings;
+
+    public Settings getSettings() {
+        return settings;
+    }
+
+    public void setSettings(Settings settings) {
+        this.settings = settings;
+    }
+}
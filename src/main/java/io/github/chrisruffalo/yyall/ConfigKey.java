@@ -0,0 +1,117 @@
+package io.github.chrisruffalo.yyall;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import io.github.chrisruffalo.yyall.bean.Property;
+
+/**
+ * A reusable, typed handle for a configuration key. The key path is parsed once when the handle is created and the
+ * converted value is remembered for as long as the configuration tree is unchanged, so reading a value that does
+ * not involve any tokens is a single comparison. Handles can be shared between threads and configurations.
+ *
+ * @param <T> the type of the value
+ */
+public final class ConfigKey<T> {
+
+    /**
+     * The value converted for one version of a configuration tree.
+     */
+    static final class Memo<T> {
+        private final Object document;
+        private final T value;
+
+        private Memo(final Object document, final T value) {
+            this.document = document;
+            this.value = value;
+        }
+
+        T value() {
+            return this.value;
+        }
+    }
+
+    private final String key;
+    private final Property property;
+    private final BiFunction<Scalar, String, T> converter;
+
+    private volatile Memo<T> memo;
+
+    private ConfigKey(final String key, final BiFunction<Scalar, String, T> converter) {
+        this.key = key;
+        this.property = Property.parse(key);
+        this.converter = converter;
+    }
+
+    public static ConfigKey<String> ofString(final String key) {
+        return new ConfigKey<>(key, (scalar, name) -> scalar.text());
+    }
+
+    public static ConfigKey<Integer> ofInt(final String key) {
+        return new ConfigKey<>(key, Scalar::asInt);
+    }
+
+    public static ConfigKey<Long> ofLong(final String key) {
+        return new ConfigKey<>(key, Scalar::asLong);
+    }
+
+    public static ConfigKey<Double> ofDouble(final String key) {
+        return new ConfigKey<>(key, Scalar::asDouble);
+    }
+
+    public static ConfigKey<Boolean> ofBoolean(final String key) {
+        return new ConfigKey<>(key, Scalar::asBoolean);
+    }
+
+    public static ConfigKey<Duration> ofDuration(final String key) {
+        return new ConfigKey<>(key, Scalar::asDuration);
+    }
+
+    public static ConfigKey<List<String>> ofList(final String key) {
+        return new ConfigKey<>(key, (scalar, name) -> scalar.asList());
+    }
+
+    /**
+     * Create a handle with a custom conversion from the resolved string value.
+     *
+     * @param key the key path
+     * @param converter converts the resolved value, only called once for each version of a value
+     * @param <T> the type of the value
+     * @return the handle
+     */
+    public static <T> ConfigKey<T> of(final String key, final Function<String, T> converter) {
+        return new ConfigKey<>(key, (scalar, name) -> converter.apply(scalar.text()));
+    }
+
+    public String key() {
+        return this.key;
+    }
+
+    Property property() {
+        return this.property;
+    }
+
+    T convert(final Scalar scalar) {
+        return this.converter.apply(scalar, this.key);
+    }
+
+    /**
+     * @return the value remembered for the given version of the tree, null if there isn't one
+     */
+    Memo<T> memo(final Object document) {
+        final Memo<T> current = this.memo;
+        return current != null && current.document == document ? current : null;
+    }
+
+    T remember(final Object document, final T value) {
+        this.memo = new Memo<>(document, value);
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        return this.key;
+    }
+}
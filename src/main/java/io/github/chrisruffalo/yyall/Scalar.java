@@ -0,0 +1,221 @@
+package io.github.chrisruffalo.yyall;
+
+import java.math.BigInteger;
+import java.time.Duration;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import io.github.chrisruffalo.yyall.exception.YyallRuntimeException;
+import org.apache.commons.lang3.BooleanUtils;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * A configuration value with every conversion that the typed getters need worked out once, the first time that
+ * conversion is asked for, so reading the text of a value never parses it. Native YAML values (numbers and booleans
+ * that SnakeYAML already built) are used as they are and only strings are parsed.
+ */
+final class Scalar {
+
+    // a whole number with an optional unit, a plain number is milliseconds
+    private static final Pattern DURATION = Pattern.compile("(-?[0-9]+)\\s*(ns|us|ms|s|m|h|d)?", Pattern.CASE_INSENSITIVE);
+
+    // marks a conversion that was tried and doesn't apply to the value
+    private static final Object NONE = new Object();
+
+    private final Object value;
+
+    private final String text;
+
+    // true if the value only depends on the tree and not on any property source
+    private final boolean constant;
+
+    // each conversion is done on first use, the result or NONE
+    private volatile Object longValue;
+    private volatile Object doubleValue;
+    private volatile Object booleanValue;
+    private volatile Duration duration;
+    private volatile List<String> list;
+
+    @SuppressWarnings("unchecked")
+    Scalar(final Object value, final boolean constant) {
+        this.value = value;
+        this.text = value.toString();
+        this.constant = constant;
+        if (value instanceof List) {
+            this.list = (List<String>) value;
+        }
+    }
+
+    String text() {
+        return this.text;
+    }
+
+    boolean isConstant() {
+        return this.constant;
+    }
+
+    int asInt(final String key) {
+        final Long parsed = this.longValue();
+        if (parsed == null || parsed < Integer.MIN_VALUE || parsed > Integer.MAX_VALUE) {
+            throw this.invalid(key, "an int");
+        }
+        return parsed.intValue();
+    }
+
+    long asLong(final String key) {
+        final Long parsed = this.longValue();
+        if (parsed == null) {
+            throw this.invalid(key, "a long");
+        }
+        return parsed;
+    }
+
+    double asDouble(final String key) {
+        Object parsed = this.doubleValue;
+        if (parsed == null) {
+            parsed = NONE;
+            if (this.value instanceof Number) {
+                parsed = ((Number) this.value).doubleValue();
+            } else if (this.value instanceof String) {
+                try {
+                    parsed = Double.parseDouble(this.text.trim());
+                } catch (NumberFormatException ex) {
+                    // not a number
+                }
+            }
+            this.doubleValue = parsed;
+        }
+        if (parsed == NONE) {
+            throw this.invalid(key, "a double");
+        }
+        return (Double) parsed;
+    }
+
+    boolean asBoolean(final String key) {
+        Object parsed = this.booleanValue;
+        if (parsed == null) {
+            parsed = NONE;
+            if (this.value instanceof Boolean) {
+                parsed = this.value;
+            } else if (this.value instanceof String) {
+                final Boolean converted = BooleanUtils.toBooleanObject(this.text.trim());
+                if (converted != null) {
+                    parsed = converted;
+                }
+            }
+            this.booleanValue = parsed;
+        }
+        if (parsed == NONE) {
+            throw this.invalid(key, "a boolean");
+        }
+        return (Boolean) parsed;
+    }
+
+    /**
+     * @return the value as a whole number or null if it isn't one
+     */
+    private Long longValue() {
+        Object parsed = this.longValue;
+        if (parsed == null) {
+            parsed = NONE;
+            if (this.value instanceof Long || this.value instanceof Integer || this.value instanceof Short || this.value instanceof Byte) {
+                parsed = ((Number) this.value).longValue();
+            } else if (this.value instanceof BigInteger) {
+                if (((BigInteger) this.value).bitLength() < Long.SIZE) {
+                    parsed = ((BigInteger) this.value).longValue();
+                }
+            } else if (this.value instanceof String) {
+                try {
+                    parsed = Long.parseLong(this.text.trim());
+                } catch (NumberFormatException ex) {
+                    // not a whole number
+                }
+            }
+            this.longValue = parsed;
+        }
+        return parsed == NONE ? null : (Long) parsed;
+    }
+
+    /**
+     * Durations are either ISO-8601 ("PT1M30S") or a whole number with an optional unit of ns, us, ms, s, m, h,
+     * or d ("30s", "250 ms"). A number without a unit is milliseconds.
+     */
+    Duration asDuration(final String key) {
+        Duration parsed = this.duration;
+        if (parsed != null) {
+            return parsed;
+        }
+        final Long millis = this.longValue();
+        if (millis != null) {
+            parsed = Duration.ofMillis(millis);
+        } else {
+            final String trimmed = this.text.trim();
+            if (StringUtils.startsWithAny(trimmed, "P", "p", "-P", "-p")) {
+                try {
+                    parsed = Duration.parse(trimmed);
+                } catch (DateTimeParseException ex) {
+                    throw this.invalid(key, "a duration");
+                }
+            } else {
+                final Matcher matcher = DURATION.matcher(trimmed);
+                if (!matcher.matches()) {
+                    throw this.invalid(key, "a duration");
+                }
+                parsed = Duration.of(Long.parseLong(matcher.group(1)), unit(matcher.group(2)));
+            }
+        }
+        this.duration = parsed;
+        return parsed;
+    }
+
+    private static ChronoUnit unit(final String unit) {
+        if (unit == null) {
+            return ChronoUnit.MILLIS;
+        }
+        switch (unit.toLowerCase()) {
+            case "ns":
+                return ChronoUnit.NANOS;
+            case "us":
+                return ChronoUnit.MICROS;
+            case "ms":
+                return ChronoUnit.MILLIS;
+            case "s":
+                return ChronoUnit.SECONDS;
+            case "m":
+                return ChronoUnit.MINUTES;
+            case "h":
+                return ChronoUnit.HOURS;
+            default:
+                return ChronoUnit.DAYS;
+        }
+    }
+
+    /**
+     * A list value is used as it is and any other value is split on commas.
+     */
+    List<String> asList() {
+        List<String> items = this.list;
+        if (items != null) {
+            return items;
+        }
+        final List<String> split = new ArrayList<>();
+        for (final String item : StringUtils.split(this.text, ',')) {
+            final String trimmed = item.trim();
+            if (!trimmed.isEmpty()) {
+                split.add(trimmed);
+            }
+        }
+        items = Collections.unmodifiableList(split);
+        this.list = items;
+        return items;
+    }
+
+    private YyallRuntimeException invalid(final String key, final String type) {
+        return new YyallRuntimeException(String.format("Value '%s' of '%s' is not %s", this.text, key, type));
+    }
+}
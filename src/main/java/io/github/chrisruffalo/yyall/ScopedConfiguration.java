@@ -0,0 +1,212 @@
+package io.github.chrisruffalo.yyall;
+
+import java.time.Duration;
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+
+/**
+ * A view of the part of a configuration under a prefix. Keys given to the view are relative to the prefix
+ * ("url" in a view at "app.db" is "app.db.url") but tokens inside values still refer to keys from the root of the
+ * document. Nothing is copied: every read goes to the configuration that the view was made from and uses its
+ * property sources and caches, so a view is as cheap to make as a string and always sees changes to the tree.
+ */
+public final class ScopedConfiguration {
+
+    private final YyallConfiguration configuration;
+
+    private final String prefix;
+
+    ScopedConfiguration(final YyallConfiguration configuration, final String prefix) {
+        this.configuration = configuration;
+        this.prefix = prefix;
+    }
+
+    /**
+     * @return the configuration that this is a view of
+     */
+    public YyallConfiguration configuration() {
+        return this.configuration;
+    }
+
+    /**
+     * @return the full key of the root of this view
+     */
+    public String prefix() {
+        return this.prefix;
+    }
+
+    /**
+     * @param key a key relative to this view
+     * @return a view of the part of this view under the key
+     */
+    public ScopedConfiguration at(final String key) {
+        if (key == null || key.isEmpty()) {
+            return this;
+        }
+        return new ScopedConfiguration(this.configuration, this.absolute(key));
+    }
+
+    /**
+     * @param key a key relative to this view
+     * @return the full key from the root of the document
+     */
+    public String absolute(final String key) {
+        if (key == null || key.isEmpty()) {
+            return this.prefix;
+        }
+        return key.charAt(0) == '[' ? this.prefix + key : this.prefix + "." + key;
+    }
+
+    public String get(final String key) {
+        return this.configuration.get(this.absolute(key));
+    }
+
+    public boolean has(final String key) {
+        return this.configuration.has(this.absolute(key));
+    }
+
+    public int getInt(final String key) {
+        return this.configuration.getInt(this.absolute(key));
+    }
+
+    public int getInt(final String key, final int defaultValue) {
+        return this.configuration.getInt(this.absolute(key), defaultValue);
+    }
+
+    public long getLong(final String key) {
+        return this.configuration.getLong(this.absolute(key));
+    }
+
+    public long getLong(final String key, final long defaultValue) {
+        return this.configuration.getLong(this.absolute(key), defaultValue);
+    }
+
+    public double getDouble(final String key) {
+        return this.configuration.getDouble(this.absolute(key));
+    }
+
+    public double getDouble(final String key, final double defaultValue) {
+        return this.configuration.getDouble(this.absolute(key), defaultValue);
+    }
+
+    public boolean getBoolean(final String key) {
+        return this.configuration.getBoolean(this.absolute(key));
+    }
+
+    public boolean getBoolean(final String key, final boolean defaultValue) {
+        return this.configuration.getBoolean(this.absolute(key), defaultValue);
+    }
+
+    public Duration getDuration(final String key) {
+        return this.configuration.getDuration(this.absolute(key));
+    }
+
+    public Duration getDuration(final String key, final Duration defaultValue) {
+        return this.configuration.getDuration(this.absolute(key), defaultValue);
+    }
+
+    public List<String> getList(final String key) {
+        return this.configuration.getList(this.absolute(key));
+    }
+
+    /**
+     * Tokens in the input refer to keys from the root of the document, not from this view.
+     */
+    public String format(final String inputString) {
+        return this.configuration.format(inputString);
+    }
+
+    public boolean put(final String key, final Object value) {
+        return this.configuration.put(this.absolute(key), value);
+    }
+
+    /**
+     * @param key a key relative to this view, null or empty for every key in the view
+     * @return the relative keys of every value at or under the key, in sorted order
+     */
+    public List<String> keys(final String key) {
+        final List<String> keys = this.configuration.keys(this.absolute(key));
+        // the root of the view is not a key of the view
+        final int skip = !keys.isEmpty() && keys.get(0).length() == this.prefix.length() ? 1 : 0;
+        return new Relative(keys, skip, this.prefix.length());
+    }
+
+    /**
+     * @param key a key relative to this view, null or empty for every key in the view
+     * @return the relative keys and resolved values of every value at or under the key, in sorted order
+     */
+    public Iterable<Map.Entry<String, String>> entries(final String key) {
+        final Iterable<Map.Entry<String, String>> entries = this.configuration.entries(this.absolute(key));
+        final int length = this.prefix.length();
+        return () -> new Iterator<Map.Entry<String, String>>() {
+            private final Iterator<Map.Entry<String, String>> iterator = entries.iterator();
+            private Map.Entry<String, String> next = this.advance();
+
+            private Map.Entry<String, String> advance() {
+                while (this.iterator.hasNext()) {
+                    final Map.Entry<String, String> entry = this.iterator.next();
+                    if (entry.getKey().length() > length) {
+                        return entry;
+                    }
+                }
+                return null;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return this.next != null;
+            }
+
+            @Override
+            public Map.Entry<String, String> next() {
+                final Map.Entry<String, String> entry = this.next;
+                if (entry == null) {
+                    throw new NoSuchElementException();
+                }
+                this.next = this.advance();
+                return new AbstractMap.SimpleImmutableEntry<>(relative(entry.getKey(), length), entry.getValue());
+            }
+        };
+    }
+
+    // drops the prefix and the '.' after it but keeps the '[' of an index
+    private static String relative(final String key, final int length) {
+        return key.charAt(length) == '.' ? key.substring(length + 1) : key.substring(length);
+    }
+
+    @Override
+    public String toString() {
+        return this.prefix;
+    }
+
+    /**
+     * Full keys seen through the view as relative keys.
+     */
+    private static final class Relative extends AbstractList<String> implements RandomAccess {
+
+        private final List<String> keys;
+        private final int skip;
+        private final int length;
+
+        private Relative(final List<String> keys, final int skip, final int length) {
+            this.keys = keys;
+            this.skip = skip;
+            this.length = length;
+        }
+
+        @Override
+        public String get(final int index) {
+            return relative(this.keys.get(index + this.skip), this.length);
+        }
+
+        @Override
+        public int size() {
+            return this.keys.size() - this.skip;
+        }
+    }
+}
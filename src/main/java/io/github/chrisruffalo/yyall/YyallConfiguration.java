@@ -1,145 +1,914 @@
 package io.github.chrisruffalo.yyall;
 
-import java.io.ByteArrayInputStream;
+import java.io.BufferedWriter;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
 
+import io.github.chrisruffalo.yyall.bean.PathIndex;
+import io.github.chrisruffalo.yyall.bean.PersistentTree;
+import io.github.chrisruffalo.yyall.bean.Property;
 import io.github.chrisruffalo.yyall.bean.PropertyNavigator;
+import io.github.chrisruffalo.yyall.bean.SortedPaths;
+import io.github.chrisruffalo.yyall.cache.BoundedCache;
+import io.github.chrisruffalo.yyall.exception.ReferenceCycleException;
+import io.github.chrisruffalo.yyall.exception.YyallRuntimeException;
+import io.github.chrisruffalo.yyall.properties.AsyncPropertySource;
 import io.github.chrisruffalo.yyall.properties.EnvironmentVariableSource;
+import io.github.chrisruffalo.yyall.properties.PropertySnapshot;
 import io.github.chrisruffalo.yyall.properties.PropertySource;
 import io.github.chrisruffalo.yyall.properties.SystemPropertiesSource;
 import io.github.chrisruffalo.yyall.resolver.DefaultStringResolver;
-import org.apache.commons.beanutils.BeanUtils;
+import io.github.chrisruffalo.yyall.resolver.ParallelTreeResolver;
+import io.github.chrisruffalo.yyall.resolver.ReferenceGraph;
+import io.github.chrisruffalo.yyall.resolver.TreeResolver;
+import io.github.chrisruffalo.yyall.yaml.EventInputStream;
+import io.github.chrisruffalo.yyall.yaml.TreeEvents;
+import io.github.chrisruffalo.yyall.yaml.YamlFactory;
 import org.apache.commons.lang3.StringUtils;
-import org.yaml.snakeyaml.DumperOptions;
-import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.emitter.Emitter;
+import org.yaml.snakeyaml.events.Event;
 
 import io.github.chrisruffalo.yyall.resolver.StringResolver;
-import org.yaml.snakeyaml.representer.Representer;
 
 public class YyallConfiguration {
 
-    private static final Yaml YAML = createYaml();
+    private static final int DEFAULT_SCALAR_CACHE_SIZE = 4096;
 
-    private final Object rootYamlObject;
+    /**
+     * One version of the loaded tree. The tree is frozen and is never changed, a change publishes a new version.
+     */
+    private static final class Document {
+        private final Object root;
+        private final long version;
+
+        // every path in the tree, only present when indexing was enabled with withIndex()
+        private final PathIndex index;
+
+        // the sorted paths of every scalar, built the first time keys are listed
+        private volatile SortedPaths keys;
+
+        // the text of every string in the tree that contains tokens, found once when the tree is loaded and added to
+        // as values are put, so that a value read from the tree doesn't have to be scanned for tokens (a text that is
+        // no longer in the tree does no harm, it still has tokens)
+        private final Set<String> templated;
+
+        // converted values that don't involve any tokens and so are the same for every configuration, get() returns
+        // the text of these as it is
+        private final BoundedCache<String, Scalar> scalars = new BoundedCache<>(DEFAULT_SCALAR_CACHE_SIZE);
+
+        private Document(final Object root, final long version, final PathIndex index, final Set<String> templated) {
+            this.root = root;
+            this.version = version;
+            this.index = index;
+            this.templated = templated;
+        }
+
+        /**
+         * @return the tree to look keys up in, which is the index when there is one
+         */
+        private Object tree() {
+            return this.index != null ? this.index : this.root;
+        }
+
+        private SortedPaths keys() {
+            SortedPaths sorted = this.keys;
+            if (sorted == null) {
+                sorted = SortedPaths.leaves(this.root);
+                this.keys = sorted;
+            }
+            return sorted;
+        }
+    }
+
+    // the current version of the tree, shared by every configuration created from the same load() so that they all
+    // see changes made through any of them
+    private final AtomicReference<Document> document;
 
     private final StringResolver resolver;
 
-    private final Set<PropertySource> sources = new HashSet<>();
+    // sources in the order they were added, later sources override earlier ones
+    private final PropertySource[] sources;
+
+    // the sources that are actually used after the system/environment settings are applied
+    private final PropertySource[] activeSources;
+
+    // merged properties from the active sources, rebuilt when a source reports a change
+    private volatile PropertySnapshot propertySnapshot = null;
+    private final AtomicLong propertyVersions = new AtomicLong();
+
+    private final boolean useEnvironmentProperties;
+    private final boolean useSystemProperties;
+
+    // fully resolved values by key, only present when caching was enabled with withCache()
+    private final BoundedCache<String, String> values;
+    private volatile long cachedVersion;
+    private volatile long cachedPropertyVersion = 0;
+
+    // converted values that involve tokens, reused for as long as the value resolves to the same string
+    private final BoundedCache<String, Scalar> converted = new BoundedCache<>(DEFAULT_SCALAR_CACHE_SIZE);
 
-    private boolean useEnvironmentProperties = true;
-    private boolean useSystemProperties = true;
+    private YyallConfiguration(final Object rootYamlObject, final StringResolver resolver, final PropertySource... propertySources) {
+        this(new AtomicReference<>(new Document(rootYamlObject, 0, null, templated(rootYamlObject, resolver, Collections.emptySet()))), resolver, propertySources, true, true, null);
+    }
+
+    /**
+     * @param tree a tree or a value that is being put into one
+     * @param resolver the resolver that decides what a token is
+     * @param known the texts found before, returned as they are if the tree doesn't add to them
+     * @return the text of every string in the tree that contains tokens, along with the known ones
+     */
+    private static Set<String> templated(final Object tree, final StringResolver resolver, final Set<String> known) {
+        Set<String> found = known;
+        final Set<Object> walked = Collections.newSetFromMap(new IdentityHashMap<>());
+        final Deque<Object> pending = new ArrayDeque<>();
+        if (tree != null) {
+            pending.push(tree);
+        }
+        while (!pending.isEmpty()) {
+            final Object node = pending.pop();
+            if (node instanceof Map || node instanceof List) {
+                // aliases are only walked once
+                if (walked.add(node)) {
+                    final Collection<?> children = node instanceof Map ? ((Map<?, ?>) node).values() : (List<?>) node;
+                    for (final Object child : children) {
+                        if (child != null) {
+                            pending.push(child);
+                        }
+                    }
+                }
+            } else if (node instanceof String && !found.contains(node) && resolver.containsTokens((String) node)) {
+                if (found == known) {
+                    found = new HashSet<>(known);
+                }
+                found.add((String) node);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * @return true if the value from the tree has tokens to resolve
+     */
+    private boolean hasTokens(final Document current, final Object value) {
+        if (value instanceof String) {
+            return current.templated.contains(value);
+        }
+        return this.resolver.containsTokens(value.toString());
+    }
 
-    private YyallConfiguration(final Object rootYamlObject, final StringResolver resolver, PropertySource... propertySources) {
-        this.rootYamlObject = rootYamlObject;
+    private YyallConfiguration(final AtomicReference<Document> document, final StringResolver resolver, final PropertySource[] propertySources, final boolean useEnvironmentProperties, final boolean useSystemProperties, final BoundedCache<String, String> values) {
+        this.document = document;
         this.resolver = resolver;
+        this.useEnvironmentProperties = useEnvironmentProperties;
+        this.useSystemProperties = useSystemProperties;
+        this.values = values;
+        this.cachedVersion = document.get().version;
+
+        final Set<PropertySource> unique = new LinkedHashSet<>();
         if(propertySources != null) {
-            this.sources.addAll(Arrays.asList(propertySources));
+            unique.addAll(Arrays.asList(propertySources));
+        }
+        this.sources = unique.toArray(new PropertySource[0]);
+
+        final List<PropertySource> filtered = new ArrayList<>(unique.size());
+        for (final PropertySource source : unique) {
+            if (source == null) {
+                continue;
+            }
+            if (!useEnvironmentProperties && source instanceof EnvironmentVariableSource) {
+                continue;
+            }
+            if (!useSystemProperties && source instanceof SystemPropertiesSource) {
+                continue;
+            }
+            filtered.add(source);
+        }
+        this.activeSources = filtered.toArray(new PropertySource[0]);
+    }
+
+    /**
+     * Creates a copy of this configuration that shares the same tree and resolver and has the given property sources
+     * and settings. When caching is enabled the copy gets its own, empty, cache.
+     */
+    private YyallConfiguration copy(final PropertySource[] propertySources, final boolean useEnvironmentProperties, final boolean useSystemProperties) {
+        BoundedCache<String, String> cache = null;
+        if (this.values != null) {
+            cache = new BoundedCache<>(this.values.maximumSize(), this.values.expireAfterWrite(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS);
         }
+        return new YyallConfiguration(this.document, this.resolver, propertySources, useEnvironmentProperties, useSystemProperties, cache);
     }
 
     public YyallConfiguration withProperties(final PropertySource... propertySources) {
-        final YyallConfiguration clone = new YyallConfiguration(this.rootYamlObject, resolver, sources.toArray(new PropertySource[0]));
+        final List<PropertySource> combined = new ArrayList<>(Arrays.asList(this.sources));
         if(propertySources != null) {
-            clone.sources.addAll(Arrays.asList(propertySources));
+            combined.addAll(Arrays.asList(propertySources));
         }
-        return clone;
+        return this.copy(combined.toArray(new PropertySource[0]), this.useEnvironmentProperties, this.useSystemProperties);
     }
 
     public YyallConfiguration withoutSystemProperties() {
         if (!useSystemProperties) {
             return this;
         }
-
-        final YyallConfiguration clone = new YyallConfiguration(this.rootYamlObject, resolver, sources.toArray(new PropertySource[0]));
-        clone.useEnvironmentProperties = this.useEnvironmentProperties;
-        clone.useSystemProperties = false;
-        return clone;
+        return this.copy(this.sources, this.useEnvironmentProperties, false);
     }
 
     public YyallConfiguration withoutEnvironmentVariables() {
         if (!useEnvironmentProperties) {
             return this;
         }
+        return this.copy(this.sources, false, this.useSystemProperties);
+    }
 
-        final YyallConfiguration clone = new YyallConfiguration(this.rootYamlObject, resolver, sources.toArray(new PropertySource[0]));
-        clone.useSystemProperties = this.useSystemProperties;
-        clone.useEnvironmentProperties = false;
-        return clone;
+    /**
+     * Returns a copy of this configuration that keeps the fully resolved value of each key that is read
+     * through get(). Cached values are dropped when the configuration is changed with put(), when
+     * refresh() is called, or when a property source that reports versions reports a change. Volatile
+     * sources (like system properties) can't report changes so a value that was resolved from one is frozen:
+     * changing a system property afterwards does not change what get() returns until one of those happens or
+     * the value expires, see withCache(int, long, TimeUnit). format() and uncached reads still see the change.
+     * This is meant for configurations that don't change underneath the application.
+     *
+     * @param maximumSize the maximum number of resolved values to keep
+     * @return a copy of this configuration with caching enabled
+     */
+    public YyallConfiguration withCache(final int maximumSize) {
+        return this.withCache(maximumSize, 0, TimeUnit.NANOSECONDS);
     }
 
-    private Map<String, String> resolvePropertiesFromSources() {
-        // don't do anything if sources is empty
-        if (sources.isEmpty()) {
-            return Collections.emptyMap();
-        }
+    /**
+     * Returns a copy of this configuration that caches resolved values like withCache(int) but where
+     * each value is also discarded once it has been in the cache for the given amount of time so that
+     * changes to property sources are eventually picked up.
+     *
+     * @param maximumSize the maximum number of resolved values to keep
+     * @param expireAfterWrite how long a resolved value can be used, 0 for no limit
+     * @param unit the unit of the expiration time
+     * @return a copy of this configuration with caching enabled
+     */
+    public YyallConfiguration withCache(final int maximumSize, final long expireAfterWrite, final TimeUnit unit) {
+        return new YyallConfiguration(this.document, this.resolver, this.sources, this.useEnvironmentProperties, this.useSystemProperties, new BoundedCache<>(maximumSize, expireAfterWrite, unit));
+    }
 
-        final Map<String, String> allProperties = new HashMap<>();
-        this.sources.forEach(source -> {
-            if (source == null) {
-                return;
+    /**
+     * Index every path in the tree so that looking up a key, whether through get(), the typed getters, or a
+     * reference inside another value, is a single hash lookup instead of a walk down the tree. The index is built
+     * once for the tree shared by this configuration and every configuration made from it with the other with*()
+     * methods and put() keeps it up to date. Indexing costs memory in proportion to the size of the tree and is
+     * only done for trees with a map at the root.
+     *
+     * @return this configuration, now indexed
+     */
+    public YyallConfiguration withIndex() {
+        while (true) {
+            final Document current = this.document.get();
+            if (current.index != null) {
+                return this;
             }
-            if (!useEnvironmentProperties && source instanceof EnvironmentVariableSource) {
-                return;
+            final PathIndex index = PathIndex.of(current.root);
+            if (index == null || this.document.compareAndSet(current, new Document(current.root, current.version, index, current.templated))) {
+                return this;
             }
-            if (!useSystemProperties && source instanceof SystemPropertiesSource) {
-                return;
+        }
+    }
+
+    /**
+     * @param key the path to check
+     * @return true if there is a (non-null) value at the given path
+     */
+    public boolean has(final String key) {
+        return key != null && !key.isEmpty() && PropertyNavigator.hasProperty(this.document.get().tree(), key);
+    }
+
+    /**
+     * Get a view of the part of this configuration under the given key. Keys read through the view are relative to
+     * the key while tokens in values still refer to keys from the root of the document. The view shares everything
+     * with this configuration and nothing is copied.
+     *
+     * @param prefix the key of the root of the view
+     * @return the view
+     */
+    public ScopedConfiguration at(final String prefix) {
+        if (prefix == null || prefix.isEmpty()) {
+            throw new YyallRuntimeException("A scoped view needs a prefix");
+        }
+        return new ScopedConfiguration(this, prefix);
+    }
+
+    /**
+     * List the keys of every value at or under the given prefix. The keys of "app.db" are "app.db" itself (if it
+     * is a value) and every key that starts with "app.db." or "app.db[". The keys are sorted once for each version
+     * of the tree, after that listing costs the number of keys found and not the size of the tree.
+     *
+     * @param prefix the key to list the values under, null or empty for every key
+     * @return an unmodifiable list of the keys in sorted order
+     */
+    public List<String> keys(final String prefix) {
+        return this.document.get().keys().under(prefix);
+    }
+
+    /**
+     * Like keys(prefix) but each key is paired with its resolved value. Values are resolved as the entries are
+     * iterated and always against the version of the tree that the keys were listed from.
+     *
+     * @param prefix the key to list the values under, null or empty for every key
+     * @return the keys and resolved values in sorted order
+     */
+    public Iterable<Map.Entry<String, String>> entries(final String prefix) {
+        final Document current = this.document.get();
+        final List<String> keys = current.keys().under(prefix);
+        return () -> new Iterator<Map.Entry<String, String>>() {
+            private final Iterator<String> iterator = keys.iterator();
+
+            @Override
+            public boolean hasNext() {
+                return this.iterator.hasNext();
             }
-           allProperties.putAll(source.getProperties());
-        });
-        return allProperties;
+
+            @Override
+            public Map.Entry<String, String> next() {
+                final String key = this.iterator.next();
+                return new AbstractMap.SimpleImmutableEntry<>(key, YyallConfiguration.this.resolve(current, key));
+            }
+        };
+    }
+
+    /**
+     * Discards any cached values and merged properties so that the next read resolves against the current
+     * configuration and the current values of all property sources, even those that did not report a change.
+     */
+    public void refresh() {
+        this.propertySnapshot = null;
+        if (this.values != null) {
+            this.values.clear();
+        }
+    }
+
+    /**
+     * Get the merged properties from all of the active sources. The merged properties are kept as an immutable
+     * snapshot that is only rebuilt when one of the sources reports a change.
+     *
+     * @return the current snapshot of properties
+     */
+    private PropertySnapshot resolvePropertiesFromSources() {
+        final PropertySource[] active = this.activeSources;
+
+        // don't do anything if sources is empty
+        if (active.length == 0) {
+            return PropertySnapshot.EMPTY;
+        }
+
+        final PropertySnapshot current = this.propertySnapshot;
+        if (current != null && current.isCurrent(active)) {
+            return current;
+        }
+
+        final PropertySnapshot rebuilt = PropertySnapshot.of(this.propertyVersions.incrementAndGet(), active, current);
+        this.propertySnapshot = rebuilt;
+        return rebuilt;
     }
 
     public String get(final String property) {
-        return this.resolve(property);
+        // everything is read from a single version of the tree even if it is replaced while resolving
+        final Document current = this.document.get();
+        final BoundedCache<String, String> cache = this.values;
+        if (cache == null) {
+            return this.resolve(current, property);
+        }
+
+        // drop everything when the tree or the properties have changed since values were cached, only sources that
+        // report versions are checked so a volatile source is looked up as values are resolved but never drops them
+        final long propertyVersion = this.resolvePropertiesFromSources().version();
+        if (current.version != this.cachedVersion || propertyVersion != this.cachedPropertyVersion) {
+            cache.clear();
+            this.cachedVersion = current.version;
+            this.cachedPropertyVersion = propertyVersion;
+        }
+
+        String value = cache.get(property);
+        if (value != null) {
+            return value;
+        }
+
+        value = this.resolve(current, property);
+        if (value != null) {
+            cache.put(property, value);
+            // the tree or properties could have been changed while the value was being resolved
+            if (current != this.document.get() || propertyVersion != this.propertyVersions.get()) {
+                cache.remove(property);
+            }
+        }
+        return value;
+    }
+
+    public <T> T get(final ConfigKey<T> key) {
+        final Document current = this.document.get();
+        final ConfigKey.Memo<T> memo = key.memo(current);
+        if (memo != null) {
+            return memo.value();
+        }
+        final Scalar scalar = this.scalar(current, key.key(), key.property());
+        final T value = scalar == null ? null : key.convert(scalar);
+        // only values that don't depend on property sources can be kept with the key
+        if (scalar == null || scalar.isConstant()) {
+            return key.remember(current, value);
+        }
+        return value;
+    }
+
+    public <T> T get(final ConfigKey<T> key, final T defaultValue) {
+        final T value = this.get(key);
+        return value == null ? defaultValue : value;
+    }
+
+    public int getInt(final String key) {
+        return this.required(key).asInt(key);
+    }
+
+    public int getInt(final String key, final int defaultValue) {
+        final Scalar scalar = this.scalar(key);
+        return scalar == null ? defaultValue : scalar.asInt(key);
+    }
+
+    public long getLong(final String key) {
+        return this.required(key).asLong(key);
+    }
+
+    public long getLong(final String key, final long defaultValue) {
+        final Scalar scalar = this.scalar(key);
+        return scalar == null ? defaultValue : scalar.asLong(key);
+    }
+
+    public double getDouble(final String key) {
+        return this.required(key).asDouble(key);
+    }
+
+    public double getDouble(final String key, final double defaultValue) {
+        final Scalar scalar = this.scalar(key);
+        return scalar == null ? defaultValue : scalar.asDouble(key);
+    }
+
+    public boolean getBoolean(final String key) {
+        return this.required(key).asBoolean(key);
+    }
+
+    public boolean getBoolean(final String key, final boolean defaultValue) {
+        final Scalar scalar = this.scalar(key);
+        return scalar == null ? defaultValue : scalar.asBoolean(key);
+    }
+
+    /**
+     * Durations are either ISO-8601 ("PT1M30S") or a whole number with an optional unit of ns, us, ms, s, m, h,
+     * or d ("30s", "250 ms"). A number without a unit is milliseconds.
+     */
+    public Duration getDuration(final String key) {
+        return this.required(key).asDuration(key);
+    }
+
+    public Duration getDuration(final String key, final Duration defaultValue) {
+        final Scalar scalar = this.scalar(key);
+        return scalar == null ? defaultValue : scalar.asDuration(key);
+    }
+
+    /**
+     * Get a list of resolved values. A list in the configuration is returned with each item resolved and any other
+     * value is split on commas.
+     *
+     * @param key the key of the list
+     * @return an unmodifiable list or null if there is no value for the key
+     */
+    public List<String> getList(final String key) {
+        final Scalar scalar = this.scalar(key);
+        return scalar == null ? null : scalar.asList();
+    }
+
+    private Scalar required(final String key) {
+        final Scalar scalar = this.scalar(key);
+        if (scalar == null) {
+            throw new YyallRuntimeException(String.format("No value for '%s'", key));
+        }
+        return scalar;
+    }
+
+    private Scalar scalar(final String key) {
+        if (key == null || key.isEmpty()) {
+            return null;
+        }
+        // check for a converted value before the key is even parsed
+        final Document current = this.document.get();
+        final Scalar cached = current.scalars.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        return this.scalar(current, key, Property.parse(key));
+    }
+
+    /**
+     * Get the converted form of a value. Values that don't involve any tokens keep their native YAML type and are
+     * converted once for each version of the tree. Values with tokens are resolved on every read but are only
+     * converted again when they resolve to something different.
+     */
+    private Scalar scalar(final Document current, final String key, final Property property) {
+        final Scalar cached = current.scalars.get(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        // the index is looked up by the text of the key, without an index the parsed key is walked
+        final Object raw = current.index != null ? PropertyNavigator.getProperty(current.index, key) : PropertyNavigator.getProperty(current.root, property);
+        if (raw == null) {
+            return null;
+        }
+
+        if (raw instanceof List) {
+            final List<?> items = (List<?>) raw;
+            final List<String> list = new ArrayList<>(items.size());
+            boolean constant = true;
+            for (int i = 0; i < items.size(); i++) {
+                final Object item = items.get(i);
+                final String text = item == null ? null : item.toString();
+                if (item != null && this.hasTokens(current, item)) {
+                    constant = false;
+                    list.add(this.resolve(current.tree(), key + "[" + i + "]"));
+                } else {
+                    list.add(text);
+                }
+            }
+            final Scalar scalar = new Scalar(Collections.unmodifiableList(list), constant);
+            if (constant) {
+                current.scalars.put(key, scalar);
+            }
+            return scalar;
+        }
+
+        if (!this.hasTokens(current, raw)) {
+            final Scalar scalar = new Scalar(raw, true);
+            current.scalars.put(key, scalar);
+            return scalar;
+        }
+
+        final String resolved = this.resolve(current.tree(), key);
+        final Scalar existing = this.converted.get(key);
+        if (existing != null && existing.text().equals(resolved)) {
+            return existing;
+        }
+        final Scalar scalar = new Scalar(resolved, false);
+        this.converted.put(key, scalar);
+        return scalar;
     }
 
     public String format(final String inputString) {
         return this.format(inputString, Collections.emptyMap());
     }
 
-    @SuppressWarnings("unchecked")
     public String format(final String inputString, Map<String, String> additionalProperties) {
-        return this.resolver.resolve(inputString, this.rootYamlObject, this.resolver.defaultProperties(), resolvePropertiesFromSources(), additionalProperties);
+        return this.format(this.document.get().tree(), inputString, additionalProperties);
+    }
+
+    private String format(final Object root, final String inputString, final Map<String, String> additionalProperties) {
+        return this.format(root, inputString, null, additionalProperties);
+    }
+
+    /**
+     * @param sourceProperties the properties of the sources, null for the current snapshot of the sources
+     */
+    @SuppressWarnings("unchecked")
+    private String format(final Object root, final String inputString, final Map<String, String> sourceProperties, final Map<String, String> additionalProperties) {
+        // nothing to resolve so there is no need to gather any properties
+        if (!this.resolver.containsTokens(inputString)) {
+            return inputString;
+        }
+        final Map<String, String> properties = sourceProperties != null ? sourceProperties : resolvePropertiesFromSources().properties();
+        return this.resolver.resolve(inputString, root, this.resolver.defaultProperties(), properties, additionalProperties);
+    }
+
+    private Function<String, Object> resolution(final Object root) {
+        return this.resolution(root, null);
+    }
+
+    /**
+     * Resolves the strings of a whole tree. Like loading the resolved text of the tree again would, a string that
+     * resolves to something that reads as a number, boolean, or null gets that type.
+     */
+    private Function<String, Object> resolution(final Object root, final Map<String, String> sourceProperties) {
+        return inputString -> typed(inputString, this.format(root, inputString, sourceProperties, Collections.emptyMap()));
+    }
+
+    private static Object typed(final String inputString, final String resolved) {
+        if (resolved == null || resolved.equals(inputString)) {
+            return resolved;
+        }
+        return YamlFactory.local().binder().implicit(resolved);
+    }
+
+    /**
+     * Get a value without blocking the caller. The value is resolved on the executor once every
+     * {@link AsyncPropertySource} has read its properties, and those sources are never waited on by blocking a
+     * thread. Values resolved this way are not cached.
+     *
+     * @param property the key to get
+     * @param executor runs the resolution and any work that the asynchronous sources need
+     * @return the resolved value, null if not present
+     */
+    public CompletableFuture<String> getAsync(final String property, final Executor executor) {
+        return this.async(executor, properties -> this.resolve(this.document.get().tree(), property, properties));
+    }
+
+    /**
+     * Format a string without blocking the caller, see getAsync.
+     *
+     * @param inputString the string to format
+     * @param executor runs the resolution and any work that the asynchronous sources need
+     * @return the formatted string
+     */
+    public CompletableFuture<String> formatAsync(final String inputString, final Executor executor) {
+        return this.async(executor, properties -> this.format(this.document.get().tree(), inputString, properties, Collections.emptyMap()));
     }
 
     /**
-     * Returns a YAML object that has all of the child properties resolved.
+     * Resolve the whole tree without blocking the caller, see resolve() and getAsync.
+     *
+     * @param executor runs the resolution and any work that the asynchronous sources need
+     * @return the root yaml object with all of the properties resolved
+     */
+    public CompletableFuture<Object> resolveAsync(final Executor executor) {
+        return this.async(executor, properties -> {
+            final Document current = this.document.get();
+            return new TreeResolver(this.resolver::containsTokens, this.resolution(current.tree(), properties)).resolve(current.root);
+        });
+    }
+
+    /**
+     * Wait for the asynchronous sources and then do the work on the executor with their properties in place of the
+     * sources themselves. Without any asynchronous sources the work just uses the current snapshot.
+     */
+    private <T> CompletableFuture<T> async(final Executor executor, final Function<Map<String, String>, T> work) {
+        final PropertySource[] active = this.activeSources;
+        final List<CompletableFuture<Map<String, String>>> reads = new ArrayList<>();
+        for (final PropertySource source : active) {
+            if (source instanceof AsyncPropertySource) {
+                reads.add(((AsyncPropertySource) source).getPropertiesAsync(executor));
+            }
+        }
+        if (reads.isEmpty()) {
+            return CompletableFuture.supplyAsync(() -> work.apply(null), executor);
+        }
+        return CompletableFuture.allOf(reads.toArray(new CompletableFuture<?>[0])).thenApplyAsync(done -> {
+            final PropertySource[] read = new PropertySource[active.length];
+            int next = 0;
+            for (int i = 0; i < active.length; i++) {
+                if (active[i] instanceof AsyncPropertySource) {
+                    final Map<String, String> properties = reads.get(next++).join();
+                    read[i] = () -> properties;
+                } else {
+                    read[i] = active[i];
+                }
+            }
+            return work.apply(PropertySnapshot.of(0, read).properties());
+        }, executor);
+    }
+
+    /**
+     * Returns a YAML object that has all of the child properties resolved. The tree is resolved in place of
+     * the loaded tree: only strings that contain tokens are resolved and any part of the tree that did not
+     * need to change is shared with this configuration. Every map and list in the result is unmodifiable.
      *
      * @return the root yaml object for this instance but with all the properties resolved using the current properties/environment
      */
     public Object resolve() {
-        return YAML.load(this.resolveString());
+        final Document current = this.document.get();
+        return new TreeResolver(this.resolver::containsTokens, this.resolution(current.tree())).resolve(current.root);
+    }
+
+    /**
+     * Scan the whole document and build the graph of which keys refer to which other keys. The graph is built
+     * against the current properties and does not follow later changes to the document or the properties.
+     *
+     * @return the reference graph for this configuration
+     */
+    @SuppressWarnings("unchecked")
+    public ReferenceGraph references() {
+        if (!(this.resolver instanceof DefaultStringResolver)) {
+            throw new YyallRuntimeException("A reference graph can only be built with the default string resolver, found " + this.resolver.getClass().getName());
+        }
+        return this.references(this.document.get());
+    }
+
+    @SuppressWarnings("unchecked")
+    private ReferenceGraph references(final Document current) {
+        return ReferenceGraph.build(current.tree(), (DefaultStringResolver) this.resolver, this.resolver.defaultProperties(), resolvePropertiesFromSources().properties());
+    }
+
+    /**
+     * Resolve the whole tree like resolve() but on the given pool. Every value is resolved once, with the values
+     * that don't refer to each other resolved at the same time, and then the maps and lists of the tree are built
+     * at the same time. This only pays off for large documents. Configurations that don't use the default string
+     * resolver are resolved with resolve() instead.
+     *
+     * @param pool the pool to resolve on, the common pool if null
+     * @return the root yaml object with all of the properties resolved
+     */
+    public Object resolve(final ForkJoinPool pool) {
+        if (!(this.resolver instanceof DefaultStringResolver)) {
+            return this.resolve();
+        }
+        final ForkJoinPool on = pool != null ? pool : ForkJoinPool.commonPool();
+        final Document current = this.document.get();
+        final Map<String, String> resolved = this.references(current).resolve(on);
+        return new ParallelTreeResolver(this.resolver::containsTokens, path -> typed(null, resolved.get(path)), this.resolution(current.tree())).resolve(current.root, on);
+    }
+
+    /**
+     * Resolve every scalar in the document at once. Each key is resolved exactly once, after the keys it refers
+     * to, which is much cheaper than calling get() for every key when the document has long reference chains.
+     *
+     * @return every scalar path in the document mapped to its resolved value, in document order
+     * @throws ReferenceCycleException if any keys refer to each other in a cycle
+     */
+    public Map<String, String> resolveAll() {
+        final ReferenceGraph graph = this.references();
+        if (!graph.getCycles().isEmpty()) {
+            throw new ReferenceCycleException(graph.getCycles().get(0));
+        }
+        return graph.resolve();
     }
 
     public <T> T resolveAs(Class<T> targetClass) {
-        return YAML.loadAs(this.resolveString(), targetClass);
+        return bind(this.resolve(), targetClass);
+    }
+
+    /**
+     * Like resolveAs(Class) but the tree is resolved on the given pool, see resolve(ForkJoinPool).
+     */
+    public <T> T resolveAs(final Class<T> targetClass, final ForkJoinPool pool) {
+        return bind(this.resolve(pool), targetClass);
     }
 
+    private static <T> T bind(final Object resolved, final Class<T> targetClass) {
+        final YamlFactory yaml = YamlFactory.local();
+        return yaml.binder().bind(yaml.yaml().represent(resolved), targetClass);
+    }
+
+    /**
+     * Returns the resolved YAML as a stream of UTF-8 text. The text is generated as the stream is read, resolving
+     * values as they are reached, so the whole resolved document is never held in memory at once.
+     *
+     * @return a stream of the resolved YAML
+     */
     public InputStream resolveStream() {
-        String resolvedString = this.resolveString();
-        if (resolvedString == null) {
-            resolvedString = "";
+        return this.resolveStream(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the resolved YAML as a stream of text in the given charset, generated as the stream is read.
+     *
+     * @param charset the charset to encode the text with
+     * @return a stream of the resolved YAML
+     */
+    public InputStream resolveStream(final Charset charset) {
+        // the stream can be read from any thread so it gets its own instances instead of the ones for this thread
+        return new EventInputStream(this.events(YamlFactory.create()), YamlFactory.dumperOptions(), charset);
+    }
+
+    /**
+     * Write the resolved YAML to the given writer as the document is walked, resolving values as they are reached.
+     * The writer is not closed.
+     *
+     * @param writer to write the resolved YAML to
+     */
+    public void resolveTo(final Writer writer) {
+        emit(this.events(YamlFactory.local()), writer);
+    }
+
+    private static void emit(final Iterator<Event> events, final Writer writer) {
+        final Emitter emitter = new Emitter(writer, YamlFactory.dumperOptions());
+        try {
+            while (events.hasNext()) {
+                emitter.emit(events.next());
+            }
+            writer.flush();
+        } catch (IOException e) {
+            throw new YyallRuntimeException("Could not write resolved configuration", e);
         }
-        return new ByteArrayInputStream(resolvedString.getBytes());
+    }
+
+    /**
+     * Write the resolved YAML to the given stream as UTF-8. The stream is not closed.
+     *
+     * @param outputStream to write the resolved YAML to
+     */
+    public void resolveTo(final OutputStream outputStream) {
+        this.resolveTo(outputStream, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Write the resolved YAML to the given stream in the given charset. The stream is not closed.
+     *
+     * @param outputStream to write the resolved YAML to
+     * @param charset the charset to encode the text with
+     */
+    public void resolveTo(final OutputStream outputStream, final Charset charset) {
+        this.resolveTo(new BufferedWriter(new OutputStreamWriter(outputStream, charset)));
+    }
+
+    /**
+     * Write the resolved YAML to the given channel in the given charset. The channel is not closed.
+     *
+     * @param channel to write the resolved YAML to
+     * @param charset the charset to encode the text with
+     */
+    public void resolveTo(final WritableByteChannel channel, final Charset charset) {
+        this.resolveTo(Channels.newWriter(channel, charset.newEncoder(), -1));
     }
 
     public String resolveString() {
-        return this.format(YAML.dump(this.rootYamlObject));
+        final StringWriter writer = new StringWriter();
+        this.resolveTo(writer);
+        return writer.toString();
+    }
+
+    /**
+     * Like resolveString() but the tree is resolved on the given pool, see resolve(ForkJoinPool). The whole resolved
+     * tree is built before it is written.
+     */
+    public String resolveString(final ForkJoinPool pool) {
+        final StringWriter writer = new StringWriter();
+        final Iterator<Event> events = new TreeEvents(this.resolve(pool), YamlFactory.local().yaml(), value -> false, UnaryOperator.identity());
+        emit(events, writer);
+        return writer.toString();
+    }
+
+    private Iterator<Event> events(final YamlFactory yaml) {
+        final Document current = this.document.get();
+        return new TreeEvents(current.root, yaml.yaml(), this.resolver::containsTokens, this.resolution(current.tree()));
+    }
+
+    /**
+     * Resolve a single property against a version of the tree. Values without any tokens are recorded with that
+     * version the first time they are read and are returned as they are from then on, without resolving anything.
+     */
+    private String resolve(final Document current, final String property) {
+        if (property == null || property.isEmpty()) {
+            return null;
+        }
+        final Scalar known = current.scalars.get(property);
+        if (known != null) {
+            return known.text();
+        }
+
+        final Object tree = current.tree();
+        final Object value = tree == null ? null : PropertyNavigator.getProperty(tree, property);
+        if (value == null) {
+            return null;
+        }
+        // lists are recorded by scalar() with their items, which is the same text
+        if (!(value instanceof List) && !this.hasTokens(current, value)) {
+            final Scalar scalar = new Scalar(value, true);
+            current.scalars.put(property, scalar);
+            return scalar.text();
+        }
+        return this.resolve(tree, value, null);
     }
 
     /**
      * Resolve a single property by repeatedly formatting it until it stabilizes. Relies on format() for the
      * details of the resolution.
      *
+     * @param root the version of the tree to resolve against
      * @param property property value to resolve
      * @return the resolved string, null if not present or not resolvable
      */
-    private String resolve(final String property) {
+    private String resolve(final Object root, final String property) {
+        return this.resolve(root, property, null);
+    }
+
+    /**
+     * @param sourceProperties the properties of the sources, null for the current snapshot of the sources
+     */
+    private String resolve(final Object root, final String property, final Map<String, String> sourceProperties) {
         // no configuration root
-        if(this.rootYamlObject == null) {
+        if(root == null) {
             return null;
         }
 
@@ -149,8 +918,10 @@ public class YyallConfiguration {
         }
 
         // attempt to get property from object
-        final Object value = PropertyNavigator.getProperty(this.rootYamlObject, property);
+        return this.resolve(root, PropertyNavigator.getProperty(root, property), sourceProperties);
+    }
 
+    private String resolve(final Object root, final Object value, final Map<String, String> sourceProperties) {
         // simple, got a null value... return a null value
         if (value == null) {
             return null;
@@ -164,31 +935,75 @@ public class YyallConfiguration {
             valueString = value.toString();
         }
 
-        String previous;
-        // recursively resolve result
-        do {
-            previous = valueString;
-            valueString = format(valueString);
-        } while(!StringUtils.equals(valueString, previous)); // use string utils because either could be null
+        // recursively resolve result, a value without tokens is already resolved and doesn't need to be formatted
+        // again just to see that it doesn't change
+        while (this.resolver.containsTokens(valueString)) {
+            final String previous = valueString;
+            valueString = this.format(root, valueString, sourceProperties, Collections.emptyMap());
+            if (StringUtils.equals(valueString, previous)) { // use string utils because either could be null
+                break;
+            }
+        }
 
         return valueString;
     }
 
+    /**
+     * Set a value in the configuration. The tree is never changed in place: a new version of the tree that shares
+     * everything but the path to the key is published, so readers never see a partial change and never wait. Maps
+     * and lists are copied as they are put so changing them afterwards does not change the configuration.
+     *
+     * @param key the path to set, every part but the last must already exist
+     * @param value the new value
+     * @return true if the value was set
+     */
     public boolean put(final String key, final Object value) {
-        try {
-            // try and set property on yaml object
-            BeanUtils.setProperty(this.rootYamlObject, key, value);
-            return true;
-        } catch(Exception ex) {
-            // no-op on no set
+        return this.putAll(Collections.singletonMap(key, value));
+    }
+
+    /**
+     * Set several values as a single change. Either every value is set in one new version of the tree or, if any
+     * of the keys can't be set, nothing is changed.
+     *
+     * @param entries the paths and values to set, in order
+     * @return true if all of the values were set
+     */
+    public boolean putAll(final Map<String, ?> entries) {
+        final List<Property> keys = new ArrayList<>(entries.size());
+        final List<Object> frozen = new ArrayList<>(entries.size());
+        entries.forEach((key, value) -> {
+            keys.add(Property.parse(key));
+            frozen.add(PersistentTree.frozenCopy(value));
+        });
+
+        // build from the current version and publish it only if nothing else was published in the meantime
+        while (true) {
+            final Document current = this.document.get();
+            Object root = current.root;
+            for (int i = 0; i < keys.size() && root != null; i++) {
+                root = PersistentTree.with(root, keys.get(i), frozen.get(i));
+            }
+            if (root == null) {
+                return false;
+            }
+            final PathIndex index = current.index == null ? null : current.index.with(root, keys);
+            Set<String> templated = current.templated;
+            for (final Object value : frozen) {
+                templated = templated(value, this.resolver, templated);
+            }
+            if (this.document.compareAndSet(current, new Document(root, current.version + 1, index, templated))) {
+                return true;
+            }
         }
-        return false;
     }
 
     public static YyallConfiguration load(final String pathToConfig, final StringResolver resolver) {
         final Path path = Paths.get(pathToConfig).normalize().toAbsolutePath();
-        final Object loaded = YAML.load(path.normalize().toString());
-        return new YyallConfiguration(loaded, resolver, defaultSources());
+        try (final InputStream inputStream = Files.newInputStream(path)) {
+            return load(inputStream, resolver);
+        } catch (IOException ex) {
+            throw new YyallRuntimeException(String.format("Could not read configuration from '%s'", path), ex);
+        }
     }
 
     public static YyallConfiguration load(final String pathToConfig) {
@@ -196,8 +1011,8 @@ public class YyallConfiguration {
     }
 
     public static YyallConfiguration load(final InputStream inputStream, final StringResolver resolver) {
-        final Object loaded = YAML.load(inputStream);
-        return new YyallConfiguration(loaded, resolver, defaultSources());
+        final Object loaded = YamlFactory.local().yaml().load(inputStream);
+        return new YyallConfiguration(PersistentTree.freeze(loaded), resolver, defaultSources());
     }
 
     public static YyallConfiguration load(final InputStream inputStream) {
@@ -210,15 +1025,4 @@ public class YyallConfiguration {
             new SystemPropertiesSource()
         };
     }
-
-    private static Yaml createYaml() {
-        final Representer representer = new Representer();
-        representer.getPropertyUtils().setSkipMissingProperties(true);
-
-        final DumperOptions dumperOptions = new DumperOptions();
-        dumperOptions.setDefaultFlowStyle(DumperOptions.FlowStyle.BLOCK);
-        dumperOptions.setPrettyFlow(true);
-
-        return new Yaml(representer, dumperOptions);
-    }
 }
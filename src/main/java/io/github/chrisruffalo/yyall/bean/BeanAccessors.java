@@ -0,0 +1,104 @@
+package io.github.chrisruffalo.yyall.bean;
+
+import java.beans.BeanInfo;
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Modifier;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The accessor plan for a bean class: a generated accessor for every bean property of the class. Plans are built
+ * the first time a class is seen and then kept for as long as the class is.
+ */
+public final class BeanAccessors {
+
+    private static final ClassValue<BeanAccessors> PLANS = new ClassValue<BeanAccessors>() {
+        @Override
+        protected BeanAccessors computeValue(final Class<?> type) {
+            return new BeanAccessors(type);
+        }
+    };
+
+    private final Map<String, PropertyAccessor> accessors;
+
+    // the public no-argument constructor, if there is one, used to copy beans
+    private final Constructor<?> constructor;
+
+    private BeanAccessors(final Class<?> type) {
+        Constructor<?> noArguments = null;
+        try {
+            if (Modifier.isPublic(type.getModifiers()) && !Modifier.isAbstract(type.getModifiers())) {
+                noArguments = type.getConstructor();
+            }
+        } catch (NoSuchMethodException e) {
+            // can't be copied then
+        }
+        this.constructor = noArguments;
+
+        final Map<String, PropertyAccessor> found = new HashMap<>();
+        try {
+            final BeanInfo beanInfo = Introspector.getBeanInfo(type);
+            for (final PropertyDescriptor descriptor : beanInfo.getPropertyDescriptors()) {
+                // indexed and class properties are never configuration
+                if (descriptor.getPropertyType() == null || "class".equals(descriptor.getName())) {
+                    continue;
+                }
+                if (descriptor.getReadMethod() == null && descriptor.getWriteMethod() == null) {
+                    continue;
+                }
+                found.put(descriptor.getName(), new PropertyAccessor(descriptor.getName(), descriptor.getPropertyType(), descriptor.getReadMethod(), descriptor.getWriteMethod()));
+            }
+        } catch (IntrospectionException e) {
+            // no properties then
+        }
+        this.accessors = found.isEmpty() ? Collections.emptyMap() : found;
+    }
+
+    /**
+     * Get the accessor plan for the given class.
+     *
+     * @param type the bean class
+     * @return the accessors for the class, never null
+     */
+    public static BeanAccessors of(final Class<?> type) {
+        return PLANS.get(type);
+    }
+
+    /**
+     * @param name the name of the property
+     * @return the accessor for the property or null if the class has no such property
+     */
+    public PropertyAccessor accessor(final String name) {
+        return this.accessors.get(name);
+    }
+
+    /**
+     * Make a shallow copy of a bean by creating a new instance and copying every property that can be both read
+     * and written.
+     *
+     * @param bean the bean to copy, must be of the class of this plan
+     * @return the copy or null if the class has no public no-argument constructor or could not be created
+     */
+    public Object copy(final Object bean) {
+        if (this.constructor == null) {
+            return null;
+        }
+        final Object copy;
+        try {
+            copy = this.constructor.newInstance();
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+        for (final PropertyAccessor accessor : this.accessors.values()) {
+            if (accessor.isReadable() && accessor.isWritable()) {
+                accessor.set(copy, accessor.get(bean));
+            }
+        }
+        return copy;
+    }
+
+}
@@ -0,0 +1,395 @@
+package io.github.chrisruffalo.yyall.bean;
+
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A frozen map tree with every path in it ("first.second[1].third") indexed up front so that a lookup is a single
+ * hash probe instead of a walk down the tree. The index is itself the root map (it reads through to the tree) so it
+ * can be used anywhere the tree can, and {@link PropertyNavigator} checks the index before walking. Only paths made
+ * of maps with plain string keys and lists are indexed, anything below a bean or under a key that can't be written
+ * as a path is found by walking from the root as usual. Maps and lists under an alias are only indexed below the
+ * first path they appear at.
+ *
+ * The paths are kept in a persistent hash trie so that the index of a changed tree shares everything but the few
+ * small nodes on the way to the changed paths with the index it was made from, like {@link PersistentTree} does for
+ * the tree itself.
+ */
+public final class PathIndex extends AbstractMap<Object, Object> {
+
+    private final Map<?, ?> root;
+
+    private final Trie paths;
+
+    private PathIndex(final Map<?, ?> root, final Trie paths) {
+        this.root = root;
+        this.paths = paths;
+    }
+
+    /**
+     * Index a frozen tree. The tree must not change afterwards.
+     *
+     * @param root the root of the tree
+     * @return the index or null if the root is not a map
+     */
+    public static PathIndex of(final Object root) {
+        if (!(root instanceof Map)) {
+            return null;
+        }
+        final Trie.Editor paths = Trie.EMPTY.edit();
+        children(null, root, paths, walked(root));
+        return new PathIndex((Map<?, ?>) root, paths.done());
+    }
+
+    public Object root() {
+        return this.root;
+    }
+
+    /**
+     * @param path the full path
+     * @return the value at the path or null if the path is not indexed
+     */
+    public Object lookup(final String path) {
+        return this.paths.get(path);
+    }
+
+    /**
+     * Index a new version of the tree where only the given paths were changed, reusing everything else from this
+     * index. This is what keeps a put() from having to index or copy the whole tree again, the cost is the size of
+     * what was changed.
+     *
+     * @param newRoot the root of the new version of the tree
+     * @param changed the paths that were set in the new version
+     * @return the index of the new version or null if the new root is not a map
+     */
+    public PathIndex with(final Object newRoot, final List<Property> changed) {
+        if (!(newRoot instanceof Map)) {
+            return null;
+        }
+        final Trie.Editor paths = this.paths.edit();
+        for (final Property property : changed) {
+            // the nodes on the path to the change were copied so each of them is indexed again, a copy has the same
+            // children as before (apart from other changed paths) so only the value at the end is indexed in full
+            final StringBuilder path = new StringBuilder();
+            Object node = newRoot;
+            for (Property segment = property; segment != null && node != null; segment = segment.next()) {
+                if (!indexable(node, segment)) {
+                    break;
+                }
+                append(path, segment);
+                node = PropertyNavigator.getSegment(node, segment);
+                final String key = path.toString();
+                if (segment.hasNext()) {
+                    // a later change can replace this node, what was below it is removed when that change is indexed
+                    if (node != null) {
+                        paths.put(key, node);
+                    }
+                } else {
+                    // the value at the end replaces whatever was below it before any of the changes, the paths
+                    // indexed by earlier changes are all in the new tree so they are indexed again with the value
+                    remove(key, this.paths.get(key), this.paths, paths);
+                    if (node != null) {
+                        paths.put(key, node);
+                        children(key, node, paths, walked(node));
+                    }
+                }
+            }
+        }
+        return new PathIndex((Map<?, ?>) newRoot, paths.done());
+    }
+
+    @Override
+    public Object get(final Object key) {
+        return this.root.get(key);
+    }
+
+    @Override
+    public boolean containsKey(final Object key) {
+        return this.root.containsKey(key);
+    }
+
+    @Override
+    public int size() {
+        return this.root.size();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Set<Entry<Object, Object>> entrySet() {
+        return ((Map<Object, Object>) this.root).entrySet();
+    }
+
+    private static boolean indexable(final Object node, final Property segment) {
+        if (node instanceof Map) {
+            return !segment.isIndex() && plain(segment.segment());
+        }
+        return node instanceof List && segment.isIndex();
+    }
+
+    // keys that would be split or read as an index can't be found through their path
+    private static boolean plain(final Object key) {
+        if (!(key instanceof String)) {
+            return false;
+        }
+        final String text = (String) key;
+        return !text.isEmpty() && text.indexOf('.') < 0 && text.indexOf('[') < 0 && text.indexOf(']') < 0;
+    }
+
+    private static void append(final StringBuilder path, final Property segment) {
+        if (segment.isIndex()) {
+            path.append('[').append(segment.index()).append(']');
+        } else {
+            if (path.length() > 0) {
+                path.append('.');
+            }
+            path.append(segment.segment());
+        }
+    }
+
+    private static String child(final String parent, final String key) {
+        return parent == null ? key : parent + "." + key;
+    }
+
+    private static Set<Object> walked(final Object node) {
+        final Set<Object> walked = Collections.newSetFromMap(new IdentityHashMap<>());
+        walked.add(node);
+        return walked;
+    }
+
+    /**
+     * Index everything below the given node, maps and lists that were already walked into are indexed but not
+     * walked into again so that a tree that contains itself is indexed once.
+     */
+    private static void children(final String path, final Object node, final Trie.Editor paths, final Set<Object> walked) {
+        if (node instanceof Map) {
+            for (final Map.Entry<?, ?> entry : ((Map<?, ?>) node).entrySet()) {
+                if (plain(entry.getKey()) && entry.getValue() != null) {
+                    final String key = child(path, (String) entry.getKey());
+                    paths.put(key, entry.getValue());
+                    if (walked.add(entry.getValue())) {
+                        children(key, entry.getValue(), paths, walked);
+                    }
+                }
+            }
+        } else if (node instanceof List && path != null) {
+            final List<?> list = (List<?>) node;
+            for (int i = 0; i < list.size(); i++) {
+                final Object item = list.get(i);
+                if (item != null) {
+                    final String key = path + "[" + i + "]";
+                    paths.put(key, item);
+                    if (walked.add(item)) {
+                        children(key, item, paths, walked);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Remove the given path and everything that was indexed below the old value at that path.
+     *
+     * @param previous the index from before the edit, which is what the old value was indexed in
+     */
+    private static void remove(final String path, final Object old, final Trie previous, final Trie.Editor paths) {
+        paths.remove(path);
+        if (old instanceof Map) {
+            for (final Map.Entry<?, ?> entry : ((Map<?, ?>) old).entrySet()) {
+                if (plain(entry.getKey())) {
+                    final String key = child(path, (String) entry.getKey());
+                    remove(key, previous.get(key), previous, paths);
+                }
+            }
+        } else if (old instanceof List) {
+            for (int i = 0; i < ((List<?>) old).size(); i++) {
+                final String key = path + "[" + i + "]";
+                remove(key, previous.get(key), previous, paths);
+            }
+        }
+    }
+
+    /**
+     * A persistent map from paths to values. Each level of the trie picks one of 32 slots with the next 5 bits of
+     * the hash of the path, a slot holds nothing, the entries for one hash, or the node of the next level. Nothing
+     * in a trie is changed once it is done, an edit copies the nodes it changes and shares the rest.
+     */
+    private static final class Trie {
+
+        private static final int BITS = 5;
+
+        private static final int WIDTH = 1 << BITS;
+
+        private static final Trie EMPTY = new Trie(new Node(null, new Object[WIDTH]));
+
+        private final Node root;
+
+        private Trie(final Node root) {
+            this.root = root;
+        }
+
+        private Object get(final String path) {
+            return get(this.root, path);
+        }
+
+        private Editor edit() {
+            return new Editor(this.root);
+        }
+
+        private static Object get(final Node root, final String path) {
+            final int hash = hash(path);
+            Object slot = root;
+            for (int shift = 0; slot instanceof Node; shift += BITS) {
+                slot = ((Node) slot).slots[index(hash, shift)];
+            }
+            for (Entry entry = (Entry) slot; entry != null; entry = entry.next) {
+                if (entry.hash == hash && entry.path.equals(path)) {
+                    return entry.value;
+                }
+            }
+            return null;
+        }
+
+        private static int hash(final String path) {
+            final int hash = path.hashCode();
+            return hash ^ (hash >>> 16);
+        }
+
+        private static int index(final int hash, final int shift) {
+            return (hash >>> shift) & (WIDTH - 1);
+        }
+
+        private static final class Node {
+
+            // the edit that made this node, only that edit may change it
+            private final Editor owner;
+
+            private final Object[] slots;
+
+            private Node(final Editor owner, final Object[] slots) {
+                this.owner = owner;
+                this.slots = slots;
+            }
+        }
+
+        /**
+         * A path and its value, paths that have the same hash are chained. Chains are never changed.
+         */
+        private static final class Entry {
+
+            private final int hash;
+
+            private final String path;
+
+            private final Object value;
+
+            private final Entry next;
+
+            private Entry(final int hash, final String path, final Object value, final Entry next) {
+                this.hash = hash;
+                this.path = path;
+                this.value = value;
+                this.next = next;
+            }
+
+            private static Entry without(final Entry chain, final String path) {
+                if (chain == null) {
+                    return null;
+                }
+                if (chain.path.equals(path)) {
+                    return chain.next;
+                }
+                final Entry rest = without(chain.next, path);
+                return rest == chain.next ? chain : new Entry(chain.hash, chain.path, chain.value, rest);
+            }
+        }
+
+        /**
+         * Changes to a trie. The nodes that an edit copies belong to it and are changed in place by the rest of the
+         * edit, so indexing a whole subtree copies each node once and not once per path.
+         */
+        private static final class Editor {
+
+            private Node root;
+
+            private Editor(final Node root) {
+                this.root = root;
+            }
+
+            private Object get(final String path) {
+                return Trie.get(this.root, path);
+            }
+
+            private void put(final String path, final Object value) {
+                this.root = this.put(this.root, 0, hash(path), path, value);
+            }
+
+            private void remove(final String path) {
+                final Object removed = this.remove(this.root, 0, hash(path), path);
+                this.root = removed != null ? (Node) removed : EMPTY.root;
+            }
+
+            private Trie done() {
+                final Trie trie = new Trie(this.root);
+                // nodes this edit made can't be changed once they are part of a trie
+                this.root = null;
+                return trie;
+            }
+
+            private Node editable(final Node node) {
+                return node.owner == this ? node : new Node(this, node.slots.clone());
+            }
+
+            private Node put(final Node node, final int shift, final int hash, final String path, final Object value) {
+                final Node edited = this.editable(node);
+                final int index = index(hash, shift);
+                final Object slot = edited.slots[index];
+                if (slot instanceof Node) {
+                    edited.slots[index] = this.put((Node) slot, shift + BITS, hash, path, value);
+                } else if (slot == null || ((Entry) slot).hash == hash) {
+                    edited.slots[index] = new Entry(hash, path, value, Entry.without((Entry) slot, path));
+                } else {
+                    // a different hash is in the slot, both go one level down where their hashes differ
+                    final Entry entry = (Entry) slot;
+                    final Node split = new Node(this, new Object[WIDTH]);
+                    split.slots[index(entry.hash, shift + BITS)] = entry;
+                    edited.slots[index] = this.put(split, shift + BITS, hash, path, value);
+                }
+                return edited;
+            }
+
+            /**
+             * @return the node without the path, the same node if it didn't have the path, or null if it is now empty
+             */
+            private Object remove(final Node node, final int shift, final int hash, final String path) {
+                final int index = index(hash, shift);
+                final Object slot = node.slots[index];
+                final Object replaced;
+                if (slot instanceof Node) {
+                    replaced = this.remove((Node) slot, shift + BITS, hash, path);
+                } else if (slot != null) {
+                    replaced = Entry.without((Entry) slot, path);
+                } else {
+                    return node;
+                }
+                if (replaced == slot) {
+                    return node;
+                }
+                final Node edited = this.editable(node);
+                edited.slots[index] = replaced;
+                if (replaced == null) {
+                    for (final Object other : edited.slots) {
+                        if (other != null) {
+                            return edited;
+                        }
+                    }
+                    return null;
+                }
+                return edited;
+            }
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package io.github.chrisruffalo.yyall.bean;
+
+import org.apache.commons.beanutils.BeanUtils;
+import org.apache.commons.beanutils.DynaBean;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Copy-on-write updates for loaded configuration trees. Maps and lists in a frozen tree can't be changed, a change
+ * instead produces a new root where only the maps, lists, arrays, and beans on the path to the change are copied and
+ * everything else is shared with the old tree. Old roots are never changed so they can be read without locks.
+ */
+public final class PersistentTree {
+
+    private PersistentTree() {
+
+    }
+
+    /**
+     * Make every map and list in a freshly loaded tree unmodifiable. The maps and lists are wrapped where they are
+     * instead of being copied so the tree must not be reachable from anywhere else.
+     *
+     * @param value the tree to freeze
+     * @return the frozen tree
+     */
+    public static Object freeze(final Object value) {
+        return freeze(value, new IdentityHashMap<>());
+    }
+
+    // nodes that are shared (through anchors and aliases) are only wrapped once
+    @SuppressWarnings("unchecked")
+    private static Object freeze(final Object value, final Map<Object, Object> frozen) {
+        final Object existing = frozen.get(value);
+        if (existing != null) {
+            return existing;
+        }
+        if (value instanceof Map) {
+            final Map<Object, Object> map = (Map<Object, Object>) value;
+            final Object wrapped = Collections.unmodifiableMap(map);
+            frozen.put(value, wrapped);
+            map.replaceAll((key, child) -> freeze(child, frozen));
+            return wrapped;
+        }
+        if (value instanceof List) {
+            final List<Object> list = (List<Object>) value;
+            final Object wrapped = Collections.unmodifiableList(list);
+            frozen.put(value, wrapped);
+            list.replaceAll(child -> freeze(child, frozen));
+            return wrapped;
+        }
+        return value;
+    }
+
+    /**
+     * Make a frozen copy of a value from outside of the tree so that the caller can't change it once it is part
+     * of the tree. Only maps and lists are copied, beans and arrays are put in the tree as they are.
+     *
+     * @param value the value to copy
+     * @return the frozen copy
+     */
+    public static Object frozenCopy(final Object value) {
+        if (value instanceof Map) {
+            final Map<Object, Object> copy = new LinkedHashMap<>();
+            ((Map<?, ?>) value).forEach((key, child) -> copy.put(key, frozenCopy(child)));
+            return Collections.unmodifiableMap(copy);
+        }
+        if (value instanceof List) {
+            final List<Object> copy = new ArrayList<>(((List<?>) value).size());
+            ((List<?>) value).forEach(child -> copy.add(frozenCopy(child)));
+            return Collections.unmodifiableList(copy);
+        }
+        return value;
+    }
+
+    /**
+     * Set the value at the end of the given path in a new version of the tree. The same paths can be set as with
+     * {@link PropertyNavigator#setProperty(Object, Property, Object)}: every segment but the last must already exist
+     * and the last can be a new or existing key of a map, an existing index of a list or array, or a writable bean
+     * property. Beans on the path are copied through their public no-argument constructor.
+     *
+     * @param root the root of the current tree, which is not changed
+     * @param property the path to set
+     * @param value the new value, used as it is
+     * @return the root of the new tree or null if the path can't be set
+     */
+    public static Object with(final Object root, final Property property, final Object value) {
+        if (root == null || property == null) {
+            return null;
+        }
+        if (!property.hasNext()) {
+            return assign(root, property, value);
+        }
+        final Object child = PropertyNavigator.getSegment(root, property);
+        if (child == null) {
+            return null;
+        }
+        final Object updated = with(child, property.next(), value);
+        return updated == null ? null : assign(root, property, updated);
+    }
+
+    /**
+     * Copy a single node with one of its segments changed.
+     */
+    private static Object assign(final Object node, final Property segment, final Object value) {
+        if (node instanceof Map) {
+            if (segment.isIndex()) {
+                return null;
+            }
+            final Map<Object, Object> copy = new LinkedHashMap<>((Map<?, ?>) node);
+            copy.put(segment.segment(), value);
+            return Collections.unmodifiableMap(copy);
+        }
+
+        if (node instanceof List) {
+            final List<?> list = (List<?>) node;
+            if (!segment.isIndex() || segment.index() >= list.size()) {
+                return null;
+            }
+            final List<Object> copy = new ArrayList<>(list);
+            copy.set(segment.index(), value);
+            return Collections.unmodifiableList(copy);
+        }
+
+        if (node.getClass().isArray()) {
+            final int length = Array.getLength(node);
+            if (!segment.isIndex() || segment.index() >= length) {
+                return null;
+            }
+            final Object copy = Array.newInstance(node.getClass().getComponentType(), length);
+            System.arraycopy(node, 0, copy, 0, length);
+            try {
+                Array.set(copy, segment.index(), value);
+            } catch (IllegalArgumentException ex) {
+                return null;
+            }
+            return copy;
+        }
+
+        if (segment.isIndex() || node instanceof CharSequence || node instanceof Number || node instanceof Boolean) {
+            return null;
+        }
+
+        if (node instanceof DynaBean) {
+            try {
+                final Object copy = BeanUtils.cloneBean(node);
+                BeanUtils.setProperty(copy, segment.segment(), value);
+                return copy;
+            } catch (IllegalAccessException | InstantiationException | InvocationTargetException | NoSuchMethodException ex) {
+                return null;
+            }
+        }
+
+        final BeanAccessors accessors = BeanAccessors.of(node.getClass());
+        final PropertyAccessor accessor = accessors.accessor(segment.segment());
+        if (accessor == null || !accessor.isWritable()) {
+            return null;
+        }
+        final Object copy = accessors.copy(node);
+        return copy != null && accessor.set(copy, value) ? copy : null;
+    }
+
+}
@@ -1,32 +1,41 @@
 package io.github.chrisruffalo.yyall.bean;
 
-import org.apache.commons.lang3.StringUtils;
+import io.github.chrisruffalo.yyall.cache.BoundedCache;
 
 import java.util.Arrays;
 import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.List;
 import java.util.Spliterator;
 import java.util.function.Consumer;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
+/**
+ * A parsed property path like "first.second[1][2].third". Each segment of the path is a link in the chain
+ * and index segments ("[1]") are parsed ahead of time. A map key that contains '.', '[', or ']' can be written
+ * quoted like "first['second.key']" (with a quote in the key doubled) so that it is read as a single segment.
+ * Parsed paths are immutable and are cached by their text so repeated lookups of the same property don't parse
+ * it again.
+ */
 public class Property implements Iterable<Property> {
 
-    private static final String INDEX_START = "[";
-    private static final String INDEX_END = "]";
-    private static final String MAP_START = "(";
-    private static final String MAP_END = ")";
+    private static final char SEPARATOR = '.';
+    private static final char INDEX_START = '[';
+    private static final char INDEX_END = ']';
+    private static final char QUOTE = '\'';
 
-    private static final Pattern INDEX_MATCH = compileMatch(INDEX_START, INDEX_END);
-    private static final Pattern MAP_MATCH = compileMatch(MAP_START, MAP_END);
+    private static final int CACHE_SIZE = 4096;
 
-    private Property next;
+    private static final BoundedCache<String, Property> CACHE = new BoundedCache<>(CACHE_SIZE);
+
+    private final Property next;
 
     private final String segment;
 
-    private Property(final String segment) {
+    // the parsed index for "[n]" segments, -1 for every other segment
+    private final int index;
+
+    private Property(final String segment, final int index, final Property next) {
         this.segment = segment;
+        this.index = index;
+        this.next = next;
     }
 
     public boolean hasNext() {
@@ -41,100 +50,209 @@ public class Property implements Iterable<Property> {
         return this.segment;
     }
 
-    private static Pattern compileMatch(final String start, final String end) {
-        final String pattern = String.format("(?:%s)(.+?)(?:%s)", Pattern.quote(start), Pattern.quote(end));
-        return Pattern.compile(pattern);
+    /**
+     * @return true if this segment is a numeric index like "[1]"
+     */
+    public boolean isIndex() {
+        return this.index >= 0;
+    }
+
+    /**
+     * @return the index of a numeric index segment, -1 for any other segment
+     */
+    public int index() {
+        return this.index;
     }
 
     public static Property parse(final String fulLPropertyPath) {
         if (fulLPropertyPath == null || fulLPropertyPath.isEmpty()) {
             return null;
         }
+        return CACHE.computeIfAbsent(fulLPropertyPath, Property::parseUncached);
+    }
+
+    /**
+     * Splits the path on '.' (ignoring empty segments and any '.' in a quoted key) and then splits each segment into
+     * a leading name and any number of trailing "[...]" index or quoted key segments. Anything after the last index
+     * in a segment is dropped.
+     *
+     * @param path the path to parse
+     * @return the first property in the chain or null if there are no segments
+     */
+    private static Property parseUncached(final String path) {
+        // start and end offsets of each segment, indexes are parsed when the chain is linked
+        final Bounds segments = new Bounds();
+
+        final int length = path.length();
+        int segmentStart = 0;
+        while (segmentStart < length) {
+            final int segmentEnd = separator(path, segmentStart);
+            if (segmentEnd > segmentStart) {
+                splitIndexes(path, segmentStart, segmentEnd, segments);
+            }
+            segmentStart = segmentEnd + 1;
+        }
+
+        // link from the end so that every property is complete when it is created
+        Property property = null;
+        for (int i = segments.size() - 1; i >= 0; i--) {
+            final int start = segments.start(i);
+            final int end = segments.end(i);
+            property = new Property(segmentText(path, start, end), parseIndex(path, start, end), property);
+        }
+        return property;
+    }
+
+    /**
+     * @return the offset of the next '.' that is not inside a quoted key, the length of the path if there is none
+     */
+    private static int separator(final String path, final int from) {
+        int current = from;
+        while (current < path.length()) {
+            final char c = path.charAt(current);
+            if (c == SEPARATOR) {
+                return current;
+            }
+            if (c == INDEX_START && current + 1 < path.length() && path.charAt(current + 1) == QUOTE) {
+                final int quote = closingQuote(path, current + 2);
+                if (quote >= 0) {
+                    current = quote + 2;
+                    continue;
+                }
+            }
+            current++;
+        }
+        return path.length();
+    }
+
+    /**
+     * @param path the path
+     * @param from the offset of the first character of a quoted key
+     * @return the offset of the quote that is followed by the ']' that ends the key, -1 if the key isn't closed
+     */
+    private static int closingQuote(final String path, final int from) {
+        int current = from;
+        while (current < path.length()) {
+            if (path.charAt(current) == QUOTE) {
+                if (current + 1 < path.length() && path.charAt(current + 1) == QUOTE) {
+                    current += 2;
+                    continue;
+                }
+                return current + 1 < path.length() && path.charAt(current + 1) == INDEX_END ? current : -1;
+            }
+            current++;
+        }
+        return -1;
+    }
 
-        final Matcher indexMatcher = INDEX_MATCH.matcher(fulLPropertyPath);
-        final Matcher mapMatcher = MAP_MATCH.matcher(fulLPropertyPath);
+    /**
+     * @return the text of a segment, the key itself for a quoted key
+     */
+    private static String segmentText(final String path, final int start, final int end) {
+        if (end - start >= 4 && path.charAt(start) == INDEX_START && path.charAt(start + 1) == QUOTE) {
+            final String key = path.substring(start + 2, end - 2);
+            return key.indexOf(QUOTE) < 0 ? key : key.replace("''", "'");
+        }
+        return path.substring(start, end);
+    }
 
-        // no segments
-        if (!fulLPropertyPath.contains(".") && !indexMatcher.find() && !mapMatcher.find()) {
-            return new Property(fulLPropertyPath);
+    private static void splitIndexes(final String path, final int start, final int end, final Bounds segments) {
+        int current = start;
+        boolean indexFound = false;
+        while (current < end) {
+            // an index is a '[' followed by at least one character and then a ']'
+            final int open = path.indexOf(INDEX_START, current);
+            final int close;
+            if (open < 0 || open >= end) {
+                close = -1;
+            } else if (open + 1 < end && path.charAt(open + 1) == QUOTE) {
+                final int quote = closingQuote(path, open + 2);
+                close = quote < 0 ? -1 : quote + 1;
+            } else {
+                close = path.indexOf(INDEX_END, open + 2);
+            }
+            if (close < 0 || close >= end) {
+                break;
+            }
+            indexFound = true;
+            if (open > current) {
+                segments.add(current, open);
+            }
+            segments.add(open, close + 1);
+            current = close + 1;
         }
+        // a segment without any index is kept as it is, if there is a remaining segment after an index it is dropped
+        if (!indexFound) {
+            segments.add(start, end);
+        }
+    }
 
-        // keep all the segments here so that we can stitch them together later
-        final List<Property> properties = new LinkedList<>();
+    /**
+     * Growable list of start/end offset pairs.
+     */
+    private static final class Bounds {
 
-        final String[] segments = StringUtils.split(fulLPropertyPath, ".");
-        Arrays.stream(segments).forEach(segment -> {
-            Matcher localIndexMatcher = INDEX_MATCH.matcher(segment);
+        private int[] offsets = new int[16];
 
-            boolean indexFound = localIndexMatcher.find();
+        private int size = 0;
 
-            // if not a map or index segment, return
-            if (!indexFound) {
-                properties.add(new Property(segment));
-                return;
+        void add(final int start, final int end) {
+            if (this.size * 2 + 2 > this.offsets.length) {
+                this.offsets = Arrays.copyOf(this.offsets, this.offsets.length * 2);
             }
+            this.offsets[this.size * 2] = start;
+            this.offsets[this.size * 2 + 1] = end;
+            this.size++;
+        }
 
-            // while there is a match
-            do {
-                // find the first match
-                int indexMatch = localIndexMatcher.start(0);
-
-                // we need to cut out the first segment
-                if (indexMatch != 0) {
-                    final String newSegment = segment.substring(0, indexMatch);
-                    segment = segment.substring(newSegment.length());
-                    properties.add(new Property(newSegment));
-                } else {
-                    final String indexSegment = segment.substring(indexMatch, localIndexMatcher.end(0));
-                    segment = segment.substring(localIndexMatcher.end(0));
-                    properties.add(new Property(indexSegment));
-                }
+        int size() {
+            return this.size;
+        }
 
-                // update match
-                localIndexMatcher = INDEX_MATCH.matcher(segment);
-                indexFound = localIndexMatcher.find();
-            } while (indexFound);
+        int start(final int i) {
+            return this.offsets[i * 2];
+        }
 
-            // if there is a remaining segment discard it (possibly warn?)
-        });
+        int end(final int i) {
+            return this.offsets[i * 2 + 1];
+        }
+    }
 
-        // go through the list of properties and set up the property chain output
-        Property property = null;
-        Property previous = null;
-        for (Property prop : properties) {
-            // set root property
-            if (property == null) {
-                property = prop;
+    private static int parseIndex(final String path, final int start, final int end) {
+        if (end - start < 3 || path.charAt(start) != INDEX_START || path.charAt(end - 1) != INDEX_END) {
+            return -1;
+        }
+        long value = 0;
+        for (int i = start + 1; i < end - 1; i++) {
+            final char c = path.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
             }
-            if (previous != null) {
-                previous.next = prop;
+            value = value * 10 + (c - '0');
+            if (value > Integer.MAX_VALUE) {
+                return -1;
             }
-            previous = prop;
         }
-
-        // return root
-        return property;
+        return (int) value;
     }
 
     @Override
     public Iterator<Property> iterator() {
-        final Property nullProperty = new Property(null);
-        nullProperty.next = this;
         return new Iterator<Property>() {
-            private Property current = nullProperty;
+            private Property current = Property.this;
 
             @Override
             public boolean hasNext() {
-                return current.hasNext();
+                return current != null;
             }
 
             @Override
             public Property next() {
-                if(hasNext()) {
-                    current = current.next();
-                    return current;
+                final Property property = current;
+                if (property != null) {
+                    current = property.next();
                 }
-                return null;
+                return property;
             }
         };
     }
@@ -0,0 +1,192 @@
+package io.github.chrisruffalo.yyall.bean;
+
+import org.apache.commons.beanutils.ConvertUtils;
+import org.apache.commons.lang3.ClassUtils;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Reads and writes a single bean property. Where possible the getter and setter are bound to generated
+ * lambdas (through LambdaMetafactory) so that a call costs about as much as calling the method directly
+ * and can be inlined by the JIT. Methods that a lambda can't be generated for are called through a
+ * method handle instead.
+ */
+public final class PropertyAccessor {
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    private final String name;
+
+    private final Class<?> type;
+
+    private final Function<Object, Object> getter;
+
+    private final BiConsumer<Object, Object> setter;
+
+    PropertyAccessor(final String name, final Class<?> type, final Method readMethod, final Method writeMethod) {
+        this.name = name;
+        this.type = type;
+        this.getter = readMethod == null ? null : getter(readMethod);
+        this.setter = writeMethod == null ? null : setter(writeMethod);
+    }
+
+    public String name() {
+        return this.name;
+    }
+
+    public Class<?> type() {
+        return this.type;
+    }
+
+    public boolean isReadable() {
+        return this.getter != null;
+    }
+
+    public boolean isWritable() {
+        return this.setter != null;
+    }
+
+    /**
+     * Read the property from the given bean.
+     *
+     * @param bean the bean to read from
+     * @return the value of the property, null if it can't be read or the getter failed
+     */
+    public Object get(final Object bean) {
+        if (this.getter == null) {
+            return null;
+        }
+        try {
+            return this.getter.apply(bean);
+        } catch (RuntimeException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Write the property on the given bean. Values that are not of the property type are converted with
+     * the commons-beanutils converters first, the same way BeanUtils.setProperty would.
+     *
+     * @param bean the bean to write to
+     * @param value the new value
+     * @return true if the value was written
+     */
+    public boolean set(final Object bean, final Object value) {
+        if (this.setter == null) {
+            return false;
+        }
+        Object converted = value;
+        if (converted == null) {
+            if (this.type.isPrimitive()) {
+                return false;
+            }
+        } else if (!ClassUtils.primitiveToWrapper(this.type).isInstance(converted)) {
+            try {
+                converted = ConvertUtils.convert(converted, this.type);
+            } catch (RuntimeException ex) {
+                return false;
+            }
+            if (converted == null || !ClassUtils.primitiveToWrapper(this.type).isInstance(converted)) {
+                return false;
+            }
+        }
+        try {
+            this.setter.accept(bean, converted);
+            return true;
+        } catch (RuntimeException ex) {
+            return false;
+        }
+    }
+
+    private static MethodHandle unreflect(final Method method) {
+        try {
+            if (!Modifier.isPublic(method.getModifiers()) || !Modifier.isPublic(method.getDeclaringClass().getModifiers())) {
+                method.setAccessible(true);
+            }
+            return LOOKUP.unreflect(method);
+        } catch (IllegalAccessException | RuntimeException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Lambdas are only generated for public methods of public classes that this class can see, the generated
+     * class is defined alongside this class and would not be able to call anything else.
+     *
+     * @param method the method to check
+     * @return true if a lambda can call the method
+     */
+    private static boolean canGenerate(final Method method) {
+        final Class<?> declaringClass = method.getDeclaringClass();
+        if (!Modifier.isPublic(method.getModifiers()) || !Modifier.isPublic(declaringClass.getModifiers())) {
+            return false;
+        }
+        try {
+            return Class.forName(declaringClass.getName(), false, PropertyAccessor.class.getClassLoader()) == declaringClass;
+        } catch (ClassNotFoundException | LinkageError ex) {
+            return false;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Function<Object, Object> getter(final Method method) {
+        final MethodHandle handle = unreflect(method);
+        if (handle == null) {
+            return null;
+        }
+        if (canGenerate(method)) {
+            try {
+                final CallSite site = LambdaMetafactory.metafactory(LOOKUP, "apply", MethodType.methodType(Function.class),
+                    MethodType.methodType(Object.class, Object.class), handle, handle.type().wrap());
+                return (Function<Object, Object>) site.getTarget().invokeExact();
+            } catch (Throwable ex) {
+                // use the method handle instead
+            }
+        }
+        final MethodHandle generic = handle.asType(MethodType.methodType(Object.class, Object.class));
+        return bean -> {
+            try {
+                return generic.invokeExact(bean);
+            } catch (RuntimeException | Error ex) {
+                throw ex;
+            } catch (Throwable ex) {
+                throw new IllegalStateException(ex);
+            }
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    private static BiConsumer<Object, Object> setter(final Method method) {
+        final MethodHandle handle = unreflect(method);
+        if (handle == null) {
+            return null;
+        }
+        if (canGenerate(method)) {
+            try {
+                final CallSite site = LambdaMetafactory.metafactory(LOOKUP, "accept", MethodType.methodType(BiConsumer.class),
+                    MethodType.methodType(void.class, Object.class, Object.class), handle, handle.type().wrap().changeReturnType(void.class));
+                return (BiConsumer<Object, Object>) site.getTarget().invokeExact();
+            } catch (Throwable ex) {
+                // use the method handle instead
+            }
+        }
+        final MethodHandle generic = handle.asType(MethodType.methodType(void.class, Object.class, Object.class));
+        return (bean, value) -> {
+            try {
+                generic.invokeExact(bean, value);
+            } catch (RuntimeException | Error ex) {
+                throw ex;
+            } catch (Throwable ex) {
+                throw new IllegalStateException(ex);
+            }
+        };
+    }
+}
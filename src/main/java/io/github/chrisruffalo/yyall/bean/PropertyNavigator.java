@@ -1,46 +1,166 @@
 package io.github.chrisruffalo.yyall.bean;
 
+import org.apache.commons.beanutils.BeanUtils;
+import org.apache.commons.beanutils.DynaBean;
 import org.apache.commons.beanutils.PropertyUtils;
 
+import java.lang.reflect.Array;
 import java.lang.reflect.InvocationTargetException;
+import java.util.List;
+import java.util.Map;
 
+/**
+ * Navigates loaded configuration trees. Maps, lists, and arrays (which is almost everything that
+ * SnakeYAML produces) are navigated directly and a path that does not exist is a miss (null) and
+ * not an exception. Any other object is treated as a bean and its properties are read through the
+ * generated accessors for its class. Only dynamic beans are left to commons-beanutils.
+ */
 public class PropertyNavigator {
 
     public static boolean hasProperty(final Object object, final String property) {
-        Property reference = Property.parse(property);
-        try {
-            while(reference.hasNext()) {
-                if (null == PropertyUtils.getProperty(object, reference.segment())) {
-                    return false;
-                };
-                reference = reference.next();
-            }
-        } catch (IllegalAccessException | NoSuchMethodException | InvocationTargetException e) {
-            return false;
-        }
-        return true;
+        return getProperty(object, property) != null;
     }
 
     public static Object getProperty(final Object object, final String property) {
+        if (object instanceof PathIndex && property != null) {
+            final Object indexed = ((PathIndex) object).lookup(property);
+            if (indexed != null) {
+                return indexed;
+            }
+        }
         return getProperty(object, Property.parse(property));
     }
 
     public static Object getProperty(final Object object, final Property property) {
         Property current = property;
-        Object gotten = null;
-        while(current != null) {
+        // paths that aren't in the index (other spellings, paths into beans) are walked from the tree itself
+        Object gotten = object instanceof PathIndex ? ((PathIndex) object).root() : object;
+        while(current != null && gotten != null) {
+            gotten = getSegment(gotten, current);
+            current = current.next();
+        }
+        return property == null ? null : gotten;
+    }
+
+    /**
+     * Read a single segment from the given object.
+     *
+     * @param object the object to read from, not null
+     * @param segment the segment to read
+     * @return the value of the segment or null if the object does not have it
+     */
+    static Object getSegment(final Object object, final Property segment) {
+        if (object instanceof Map) {
+            // index segments can't address map entries
+            return segment.isIndex() ? null : ((Map<?, ?>) object).get(segment.segment());
+        }
+
+        if (object instanceof List) {
+            final List<?> list = (List<?>) object;
+            return segment.isIndex() && segment.index() < list.size() ? list.get(segment.index()) : null;
+        }
+
+        if (object.getClass().isArray()) {
+            return segment.isIndex() && segment.index() < Array.getLength(object) ? Array.get(object, segment.index()) : null;
+        }
+
+        // scalars don't have any properties that a configuration would point at
+        if (segment.isIndex() || object instanceof CharSequence || object instanceof Number || object instanceof Boolean) {
+            return null;
+        }
+
+        if (object instanceof DynaBean) {
             try {
-                gotten = PropertyUtils.getProperty(gotten == null ? object : gotten, current.segment());
+                return PropertyUtils.getProperty(object, segment.segment());
             } catch (IllegalAccessException | InvocationTargetException | NoSuchMethodException e) {
                 // can't do anything about this and can't go further
                 return null;
             }
-            if (gotten == null) {
-                break;
+        }
+
+        final PropertyAccessor accessor = BeanAccessors.of(object.getClass()).accessor(segment.segment());
+        return accessor == null ? null : accessor.get(object);
+    }
+
+    /**
+     * Set the value at the end of the given path. Every segment but the last must already exist. The last
+     * segment can be a new or existing key of a map, an existing index of a list or array, or a writable bean
+     * property.
+     *
+     * @param object the root object
+     * @param property the path to set
+     * @param value the new value
+     * @return true if the value was set
+     */
+    @SuppressWarnings("unchecked")
+    public static boolean setProperty(final Object object, final Property property, final Object value) {
+        if (object == null || property == null) {
+            return false;
+        }
+
+        // find the parent of the last segment
+        Object parent = object;
+        Property last = property;
+        while (last.hasNext()) {
+            parent = getSegment(parent, last);
+            if (parent == null) {
+                return false;
             }
-            current = current.next();
+            last = last.next();
         }
-        return gotten;
+
+        if (parent instanceof Map) {
+            if (last.isIndex()) {
+                return false;
+            }
+            try {
+                ((Map<Object, Object>) parent).put(last.segment(), value);
+                return true;
+            } catch (UnsupportedOperationException | ClassCastException ex) {
+                return false;
+            }
+        }
+
+        if (parent instanceof List) {
+            final List<Object> list = (List<Object>) parent;
+            if (!last.isIndex() || last.index() >= list.size()) {
+                return false;
+            }
+            try {
+                list.set(last.index(), value);
+                return true;
+            } catch (UnsupportedOperationException | ClassCastException ex) {
+                return false;
+            }
+        }
+
+        if (parent.getClass().isArray()) {
+            if (!last.isIndex() || last.index() >= Array.getLength(parent)) {
+                return false;
+            }
+            try {
+                Array.set(parent, last.index(), value);
+                return true;
+            } catch (IllegalArgumentException ex) {
+                return false;
+            }
+        }
+
+        if (last.isIndex() || parent instanceof CharSequence || parent instanceof Number || parent instanceof Boolean) {
+            return false;
+        }
+
+        if (parent instanceof DynaBean) {
+            try {
+                BeanUtils.setProperty(parent, last.segment(), value);
+                return true;
+            } catch (IllegalAccessException | InvocationTargetException ex) {
+                return false;
+            }
+        }
+
+        final PropertyAccessor accessor = BeanAccessors.of(parent.getClass()).accessor(last.segment());
+        return accessor != null && accessor.set(parent, value);
     }
 
 }
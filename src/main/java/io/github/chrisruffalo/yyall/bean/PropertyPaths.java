@@ -0,0 +1,95 @@
+package io.github.chrisruffalo.yyall.bean;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Walks a loaded tree of maps and lists and names every node in it with the same property path syntax that
+ * {@link Property} parses: map keys are joined with '.' and list entries are addressed with "[index]". Keys that
+ * would be read as more than one segment (like "a.b") are quoted ("['a.b']") so that every path names exactly one
+ * node and can be parsed back to it. A map or list that appears more than once in the tree (a YAML alias) is visited
+ * at each path but only the first path walks into it, so a tree that contains itself is walked once.
+ */
+public final class PropertyPaths {
+
+    @FunctionalInterface
+    public interface Visitor {
+        /**
+         * Visit one node of the tree.
+         *
+         * @param path the property path of the node
+         * @param value the value at that path, a map or list for inner nodes
+         */
+        void visit(String path, Object value);
+    }
+
+    private PropertyPaths() {
+
+    }
+
+    /**
+     * Visit every node below the root (but not the root itself) in document order, parents before children.
+     *
+     * @param root the tree to walk
+     * @param visitor called for each node
+     */
+    public static void walk(final Object root, final Visitor visitor) {
+        final StringBuilder path = new StringBuilder();
+        // maps and lists that were already walked into, by identity since equal containers are still separate nodes
+        final Set<Object> walked = Collections.newSetFromMap(new IdentityHashMap<>());
+        walked.add(root);
+        children(root, path, visitor, walked);
+    }
+
+    private static void children(final Object node, final StringBuilder path, final Visitor visitor, final Set<Object> walked) {
+        final int mark = path.length();
+        if (node instanceof Map) {
+            for (final Map.Entry<?, ?> entry : ((Map<?, ?>) node).entrySet()) {
+                appendKey(path, entry.getKey());
+                visit(entry.getValue(), path, visitor, walked);
+                path.setLength(mark);
+            }
+        } else if (node instanceof List) {
+            final List<?> list = (List<?>) node;
+            for (int i = 0; i < list.size(); i++) {
+                path.append('[').append(i).append(']');
+                visit(list.get(i), path, visitor, walked);
+                path.setLength(mark);
+            }
+        }
+    }
+
+    /**
+     * @param path the path of a map, empty for the root
+     * @param key a key of the map
+     * @return the path of the value of the key
+     */
+    public static String child(final String path, final Object key) {
+        final StringBuilder builder = new StringBuilder(path);
+        appendKey(builder, key);
+        return builder.toString();
+    }
+
+    private static void appendKey(final StringBuilder path, final Object key) {
+        final String text = String.valueOf(key);
+        if (!text.isEmpty() && text.indexOf('.') < 0 && text.indexOf('[') < 0 && text.indexOf(']') < 0) {
+            if (path.length() > 0) {
+                path.append('.');
+            }
+            path.append(text);
+            return;
+        }
+        path.append("['").append(text.replace("'", "''")).append("']");
+    }
+
+    private static void visit(final Object value, final StringBuilder path, final Visitor visitor, final Set<Object> walked) {
+        visitor.visit(path.toString(), value);
+        if ((value instanceof Map || value instanceof List) && walked.add(value)) {
+            children(value, path, visitor, walked);
+        }
+    }
+
+}
@@ -0,0 +1,111 @@
+package io.github.chrisruffalo.yyall.bean;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * The paths of every scalar in a tree, sorted, so that the paths under a prefix can be found with a few binary
+ * searches. The paths under "app.db" are "app.db" itself and the paths that start with "app.db." or "app.db[", which
+ * are two contiguous ranges of the sorted paths, so listing them costs the number of matches and not the size of
+ * the tree.
+ */
+public final class SortedPaths {
+
+    private final String[] paths;
+
+    private SortedPaths(final String[] paths) {
+        this.paths = paths;
+    }
+
+    /**
+     * @param root the tree to index
+     * @return the sorted paths of every value in the tree that is not a map or a list
+     */
+    public static SortedPaths leaves(final Object root) {
+        final List<String> found = new ArrayList<>();
+        PropertyPaths.walk(root, (path, value) -> {
+            if (value != null && !(value instanceof Map) && !(value instanceof List)) {
+                found.add(path);
+            }
+        });
+        final String[] paths = found.toArray(new String[0]);
+        Arrays.sort(paths);
+        return new SortedPaths(paths);
+    }
+
+    public int size() {
+        return this.paths.length;
+    }
+
+    /**
+     * @param prefix the path to list, null or empty for every path
+     * @return an unmodifiable view of the paths at or under the prefix, in order
+     */
+    public List<String> under(final String prefix) {
+        if (prefix == null || prefix.isEmpty()) {
+            return Collections.unmodifiableList(Arrays.asList(this.paths));
+        }
+        // the ranges are already in sorted order: the prefix itself, then "prefix.", then "prefix["
+        final int exact = Arrays.binarySearch(this.paths, prefix);
+        final int[] bounds = new int[] {
+            exact >= 0 ? exact : 0, exact >= 0 ? exact + 1 : 0,
+            this.lowerBound(prefix + '.'), this.lowerBound(prefix + (char) ('.' + 1)),
+            this.lowerBound(prefix + '['), this.lowerBound(prefix + (char) ('[' + 1))
+        };
+        return new Ranges(this.paths, bounds);
+    }
+
+    private int lowerBound(final String key) {
+        final int found = Arrays.binarySearch(this.paths, key);
+        return found >= 0 ? found : -(found + 1);
+    }
+
+    /**
+     * A list over several ranges of the sorted paths without copying them.
+     */
+    private static final class Ranges extends AbstractList<String> implements RandomAccess {
+
+        private final String[] paths;
+
+        // start and end (exclusive) of each range
+        private final int[] bounds;
+
+        private final int size;
+
+        private Ranges(final String[] paths, final int[] bounds) {
+            this.paths = paths;
+            this.bounds = bounds;
+            int size = 0;
+            for (int i = 0; i < bounds.length; i += 2) {
+                size += bounds[i + 1] - bounds[i];
+            }
+            this.size = size;
+        }
+
+        @Override
+        public String get(final int index) {
+            if (index < 0 || index >= this.size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.size);
+            }
+            int remaining = index;
+            for (int i = 0; i < this.bounds.length; i += 2) {
+                final int length = this.bounds[i + 1] - this.bounds[i];
+                if (remaining < length) {
+                    return this.paths[this.bounds[i] + remaining];
+                }
+                remaining -= length;
+            }
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.size);
+        }
+
+        @Override
+        public int size() {
+            return this.size;
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package io.github.chrisruffalo.yyall.cache;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * A small, bounded, concurrent cache. Reads are lock-free and do not allocate. When the cache grows past
+ * its maximum size a single thread sweeps the entries with a second-chance (clock) policy: entries that
+ * have been read since the last sweep survive it, everything else is dropped. Entries can optionally
+ * expire a fixed amount of time after they were written.
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+public class BoundedCache<K, V> {
+
+    private static final class Entry<V> {
+
+        private final V value;
+
+        private final long written;
+
+        private volatile boolean referenced;
+
+        private Entry(final V value, final long written) {
+            this.value = value;
+            this.written = written;
+        }
+    }
+
+    private final ConcurrentHashMap<K, Entry<V>> entries;
+
+    private final int maximumSize;
+
+    // zero when entries never expire
+    private final long expireAfterWriteNanos;
+
+    private final AtomicBoolean sweeping = new AtomicBoolean(false);
+
+    public BoundedCache(final int maximumSize) {
+        this(maximumSize, 0, TimeUnit.NANOSECONDS);
+    }
+
+    public BoundedCache(final int maximumSize, final long expireAfterWrite, final TimeUnit unit) {
+        if (maximumSize < 1) {
+            throw new IllegalArgumentException("The maximum size of a cache must be at least 1");
+        }
+        if (expireAfterWrite < 0) {
+            throw new IllegalArgumentException("The expiration time of a cache cannot be negative");
+        }
+        this.maximumSize = maximumSize;
+        this.expireAfterWriteNanos = unit.toNanos(expireAfterWrite);
+        this.entries = new ConcurrentHashMap<>(Math.min(maximumSize, 256));
+    }
+
+    public V get(final K key) {
+        if (key == null) {
+            return null;
+        }
+        final Entry<V> entry = this.entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (this.expireAfterWriteNanos > 0 && System.nanoTime() - entry.written >= this.expireAfterWriteNanos) {
+            this.entries.remove(key, entry);
+            return null;
+        }
+        // only write when the flag changes so that hot entries don't bounce cache lines between cores
+        if (!entry.referenced) {
+            entry.referenced = true;
+        }
+        return entry.value;
+    }
+
+    /**
+     * Returns the cached value or computes, stores, and returns a new one. The loader is called outside
+     * of any lock so it may itself use the cache but it may also be called more than once for the same key
+     * when threads race.
+     *
+     * @param key the key to look up
+     * @param loader computes the value for a missing key, null values are returned but not cached
+     * @return the cached or computed value
+     */
+    public V computeIfAbsent(final K key, final Function<? super K, ? extends V> loader) {
+        final V cached = this.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        final V value = loader.apply(key);
+        if (value != null) {
+            this.put(key, value);
+        }
+        return value;
+    }
+
+    public void put(final K key, final V value) {
+        if (key == null || value == null) {
+            return;
+        }
+        this.entries.put(key, new Entry<>(value, this.expireAfterWriteNanos > 0 ? System.nanoTime() : 0));
+        if (this.entries.size() > this.maximumSize) {
+            this.sweep();
+        }
+    }
+
+    public void remove(final K key) {
+        if (key != null) {
+            this.entries.remove(key);
+        }
+    }
+
+    public void clear() {
+        this.entries.clear();
+    }
+
+    public int size() {
+        return this.entries.size();
+    }
+
+    public int maximumSize() {
+        return this.maximumSize;
+    }
+
+    public long expireAfterWrite(final TimeUnit unit) {
+        return unit.convert(this.expireAfterWriteNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private void sweep() {
+        // only one thread needs to make room, everybody else can carry on
+        if (!this.sweeping.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            // clear down to three quarters of the maximum so that a full cache doesn't sweep on every put
+            final int target = Math.max(1, this.maximumSize - (this.maximumSize / 4));
+            // two passes: the first clears the reference bits the second pass then evicts
+            for (int pass = 0; pass < 2 && this.entries.size() > target; pass++) {
+                final Iterator<Map.Entry<K, Entry<V>>> iterator = this.entries.entrySet().iterator();
+                while (iterator.hasNext() && this.entries.size() > target) {
+                    final Entry<V> entry = iterator.next().getValue();
+                    if (entry.referenced) {
+                        entry.referenced = false;
+                    } else {
+                        iterator.remove();
+                    }
+                }
+            }
+        } finally {
+            this.sweeping.set(false);
+        }
+    }
+}
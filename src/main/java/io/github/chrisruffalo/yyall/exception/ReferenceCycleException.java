@@ -0,0 +1,24 @@
+package io.github.chrisruffalo.yyall.exception;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Thrown when the keys of a document refer to each other in a cycle and the document has to be resolved as a whole.
+ */
+public class ReferenceCycleException extends YyallRuntimeException {
+
+    private final List<String> cycle;
+
+    public ReferenceCycleException(final List<String> cycle) {
+        super("Cyclic reference: " + String.join(" -> ", cycle));
+        this.cycle = Collections.unmodifiableList(cycle);
+    }
+
+    /**
+     * @return the keys on the cycle in reference order, starting and ending with the same key
+     */
+    public List<String> getCycle() {
+        return this.cycle;
+    }
+}
@@ -0,0 +1,29 @@
+package io.github.chrisruffalo.yyall.properties;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * A property source that reads its properties without blocking the caller, for sources that do I/O. The
+ * asynchronous methods of a configuration (like getAsync) wait for these sources by composing futures instead of
+ * blocking a thread. The blocking methods (like get) still work and read the properties on the calling thread.
+ */
+public interface AsyncPropertySource extends PropertySource {
+
+    /**
+     * Start reading the properties.
+     *
+     * @param executor runs any work that the source can't do without blocking
+     * @return the properties once they have been read
+     */
+    CompletableFuture<Map<String, String>> getPropertiesAsync(Executor executor);
+
+    /**
+     * Reads the properties on the calling thread and waits for them.
+     */
+    @Override
+    default Map<String, String> getProperties() {
+        return this.getPropertiesAsync(Runnable::run).join();
+    }
+}
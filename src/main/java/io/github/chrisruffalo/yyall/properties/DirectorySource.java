@@ -0,0 +1,187 @@
+package io.github.chrisruffalo.yyall.properties;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.github.chrisruffalo.yyall.cache.BoundedCache;
+import io.github.chrisruffalo.yyall.exception.YyallRuntimeException;
+
+/**
+ * Properties from a directory where each file is one property, named by the file and with the contents of the file
+ * (without trailing line breaks) as its value, like secrets that are mounted into a container. Files are only read
+ * when their property is looked up and are then kept. At most once every revalidation interval the files that have
+ * been read are checked for a different modification time or size and only those are read again, which is also
+ * when the version of the source changes. Keys that have no file are remembered (up to a limit) until a file is added
+ * to or removed from the directory. Hidden files (starting with '.') are never properties.
+ */
+public class DirectorySource implements PropertySource {
+
+    private static final long DEFAULT_REVALIDATE_MILLIS = 2000;
+
+    private static final int MISSING_CACHE_SIZE = 1024;
+
+    private final Path directory;
+    private final Charset charset;
+    private final long revalidateNanos;
+
+    private final Map<String, FileContents> files = new ConcurrentHashMap<>();
+    // keys without a file, every key that is looked up in the source ends up here when there is no file for it
+    private final BoundedCache<String, Boolean> missing = new BoundedCache<>(MISSING_CACHE_SIZE);
+    // when the directory was last modified, which is when files were last added or removed
+    private final AtomicLong directoryModified;
+    private final AtomicLong version = new AtomicLong();
+    private final AtomicLong lastRevalidated;
+
+    public DirectorySource(final Path directory) {
+        this(directory, DEFAULT_REVALIDATE_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    public DirectorySource(final Path directory, final long revalidate, final TimeUnit unit) {
+        this(directory, StandardCharsets.UTF_8, revalidate, unit);
+    }
+
+    /**
+     * @param directory the directory of files
+     * @param charset the charset of the files
+     * @param revalidate how often files that have been read are checked for changes
+     * @param unit the unit of the revalidation interval
+     */
+    public DirectorySource(final Path directory, final Charset charset, final long revalidate, final TimeUnit unit) {
+        this.directory = directory.normalize().toAbsolutePath();
+        this.charset = charset;
+        this.revalidateNanos = unit.toNanos(revalidate);
+        this.lastRevalidated = new AtomicLong(System.nanoTime());
+        this.directoryModified = new AtomicLong(this.directoryModified());
+    }
+
+    @Override
+    public String lookup(final String key) {
+        if (!isFileName(key)) {
+            return null;
+        }
+        FileContents contents = this.files.get(key);
+        if (contents == null) {
+            if (this.missing.get(key) != null) {
+                return null;
+            }
+            final long modified = this.directoryModified.get();
+            contents = FileContents.read(this.directory.resolve(key), this.charset);
+            if (contents == FileContents.MISSING) {
+                this.missing.put(key, Boolean.TRUE);
+                // the directory changed while the file was read so the file might be there now
+                if (modified != this.directoryModified.get()) {
+                    this.missing.remove(key);
+                }
+                return null;
+            }
+            final FileContents existing = this.files.putIfAbsent(key, contents);
+            if (existing != null) {
+                contents = existing;
+            }
+        }
+        return value(contents);
+    }
+
+    @Override
+    public Set<String> keys() {
+        final Set<String> keys = new LinkedHashSet<>();
+        try (final DirectoryStream<Path> stream = Files.newDirectoryStream(this.directory)) {
+            for (final Path file : stream) {
+                final String name = file.getFileName().toString();
+                if (isFileName(name) && Files.isRegularFile(file)) {
+                    keys.add(name);
+                }
+            }
+        } catch (NoSuchFileException ex) {
+            return Collections.emptySet();
+        } catch (IOException ex) {
+            throw new YyallRuntimeException(String.format("Could not list '%s'", this.directory), ex);
+        }
+        return keys;
+    }
+
+    @Override
+    public Map<String, String> getProperties() {
+        final Map<String, String> properties = new HashMap<>();
+        for (final String key : this.keys()) {
+            final String value = this.lookup(key);
+            if (value != null) {
+                properties.put(key, value);
+            }
+        }
+        return properties;
+    }
+
+    /**
+     * Checks the files that have been read for changes, and the directory for files that were added or removed,
+     * once the revalidation interval has passed.
+     *
+     * @return a version that changes when any of the files have changed
+     */
+    @Override
+    public long version() {
+        final long now = System.nanoTime();
+        final long last = this.lastRevalidated.get();
+        if (now - last >= this.revalidateNanos && this.lastRevalidated.compareAndSet(last, now)) {
+            boolean changed = false;
+            final long modified = this.directoryModified();
+            if (modified != this.directoryModified.getAndSet(modified) && this.missing.size() > 0) {
+                // a key that had no file might have one now
+                this.missing.clear();
+                changed = true;
+            }
+            for (final Map.Entry<String, FileContents> entry : this.files.entrySet()) {
+                final FileContents refreshed = entry.getValue().refresh(this.directory.resolve(entry.getKey()), this.charset);
+                if (refreshed != entry.getValue()) {
+                    entry.setValue(refreshed);
+                    changed = true;
+                }
+            }
+            if (changed) {
+                this.version.incrementAndGet();
+            }
+        }
+        return this.version.get();
+    }
+
+    private long directoryModified() {
+        try {
+            return Files.readAttributes(this.directory, BasicFileAttributes.class).lastModifiedTime().to(TimeUnit.NANOSECONDS);
+        } catch (NoSuchFileException ex) {
+            return -1;
+        } catch (IOException ex) {
+            throw new YyallRuntimeException(String.format("Could not read attributes of '%s'", this.directory), ex);
+        }
+    }
+
+    private static boolean isFileName(final String key) {
+        return key != null && !key.isEmpty() && key.charAt(0) != '.' && key.indexOf('/') < 0 && key.indexOf('\\') < 0;
+    }
+
+    // files usually end with a line break that isn't part of the value
+    static String value(final FileContents contents) {
+        final String text = contents.text();
+        if (text == null) {
+            return null;
+        }
+        int end = text.length();
+        while (end > 0 && (text.charAt(end - 1) == '\n' || text.charAt(end - 1) == '\r')) {
+            end--;
+        }
+        return end == text.length() ? text : text.substring(0, end);
+    }
+}
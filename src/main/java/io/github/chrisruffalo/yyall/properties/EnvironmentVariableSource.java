@@ -1,14 +1,105 @@
 package io.github.chrisruffalo.yyall.properties;
 
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 
 /**
- * Adds environment variables as a property source
+ * Adds environment variables as a property source. With relaxed binding a property that isn't an environment
+ * variable by name is also looked up by its environment form, so "app.db.host" finds APP_DB_HOST and
+ * "servers[0].name" finds SERVERS_0_NAME.
  */
 public class EnvironmentVariableSource implements PropertySource {
 
+    /**
+     * The environment by relaxed name, built the first time it is needed and then shared by every source
+     * because the environment of a running process does not change.
+     */
+    private static final class RelaxedIndex {
+        private static final Map<String, String> INDEX = index(System.getenv());
+    }
+
+    private final boolean relaxed;
+
+    public EnvironmentVariableSource() {
+        this(false);
+    }
+
+    /**
+     * @param relaxed true to also look properties up by their environment form
+     */
+    public EnvironmentVariableSource(final boolean relaxed) {
+        this.relaxed = relaxed;
+    }
+
     @Override
     public Map<String, String> getProperties() {
         return System.getenv();
     }
+
+    @Override
+    public String lookup(final String key) {
+        if (key == null) {
+            return null;
+        }
+        final String value = System.getenv(key);
+        if (value != null || !this.relaxed) {
+            return value;
+        }
+        return RelaxedIndex.INDEX.get(relaxedName(key));
+    }
+
+    @Override
+    public Set<String> keys() {
+        return System.getenv().keySet();
+    }
+
+    /**
+     * The environment of a running process does not change.
+     *
+     * @return always the same version
+     */
+    @Override
+    public long version() {
+        return 0;
+    }
+
+    static Map<String, String> index(final Map<String, String> environment) {
+        final Map<String, String> index = new HashMap<>();
+        environment.forEach((name, value) -> {
+            final String relaxedName = relaxedName(name);
+            // a variable that is already in the relaxed form wins over any other spelling of it
+            if (relaxedName.equals(name) || !index.containsKey(relaxedName)) {
+                index.put(relaxedName, value);
+            }
+        });
+        return Collections.unmodifiableMap(index);
+    }
+
+    /**
+     * Upper case the name and replace everything that can't be in an environment variable name ('.', '-', '[',
+     * and ']') with '_', without repeated or trailing underscores.
+     *
+     * @param name the property or variable name
+     * @return the relaxed form of the name
+     */
+    static String relaxedName(final String name) {
+        final StringBuilder relaxedName = new StringBuilder(name.length() + 2);
+        for (int i = 0; i < name.length(); i++) {
+            final char c = name.charAt(i);
+            if (c == '.' || c == '-' || c == '[' || c == ']' || c == '_') {
+                if (relaxedName.length() > 0 && relaxedName.charAt(relaxedName.length() - 1) != '_') {
+                    relaxedName.append('_');
+                }
+            } else {
+                relaxedName.append(Character.toUpperCase(c));
+            }
+        }
+        final int end = relaxedName.length() - 1;
+        if (end >= 0 && relaxedName.charAt(end) == '_') {
+            relaxedName.setLength(end);
+        }
+        return relaxedName.toString();
+    }
 }
@@ -0,0 +1,77 @@
+package io.github.chrisruffalo.yyall.properties;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+import io.github.chrisruffalo.yyall.exception.YyallRuntimeException;
+
+/**
+ * The contents of a file along with the modification time and size that it had when it was read, so that it only
+ * has to be read again when either of them changes.
+ */
+final class FileContents {
+
+    static final FileContents MISSING = new FileContents(null, -1, -1);
+
+    private final String text;
+    private final long modified;
+    private final long size;
+
+    private FileContents(final String text, final long modified, final long size) {
+        this.text = text;
+        this.modified = modified;
+        this.size = size;
+    }
+
+    /**
+     * @return the text of the file or null if the file did not exist
+     */
+    String text() {
+        return this.text;
+    }
+
+    /**
+     * Read the file if it isn't the same as it was when these contents were read.
+     *
+     * @param path the file
+     * @param charset the charset of the file
+     * @return these contents if the file is unchanged or the new contents
+     */
+    FileContents refresh(final Path path, final Charset charset) {
+        final BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (NoSuchFileException ex) {
+            return MISSING;
+        } catch (IOException ex) {
+            throw new YyallRuntimeException(String.format("Could not read attributes of '%s'", path), ex);
+        }
+        if (!attributes.isRegularFile()) {
+            return MISSING;
+        }
+        final long modified = attributes.lastModifiedTime().toMillis();
+        if (this != MISSING && modified == this.modified && attributes.size() == this.size) {
+            return this;
+        }
+        return new FileContents(text(path, charset), modified, attributes.size());
+    }
+
+    static FileContents read(final Path path, final Charset charset) {
+        return MISSING.refresh(path, charset);
+    }
+
+    private static String text(final Path path, final Charset charset) {
+        // the text ends up on the heap either way so the file is read straight into it
+        try {
+            return new String(Files.readAllBytes(path), charset);
+        } catch (NoSuchFileException ex) {
+            return null;
+        } catch (IOException ex) {
+            throw new YyallRuntimeException(String.format("Could not read '%s'", path), ex);
+        }
+    }
+}
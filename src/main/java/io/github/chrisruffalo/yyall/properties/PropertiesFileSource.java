@@ -0,0 +1,134 @@
+package io.github.chrisruffalo.yyall.properties;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.github.chrisruffalo.yyall.exception.YyallRuntimeException;
+
+/**
+ * Properties from a .properties file. The file is read the first time a property is looked up and is then kept.
+ * At most once every revalidation interval the file is checked for a different modification time or size and is
+ * only read again if either changed, which is also when the version of the source changes. A missing file has no
+ * properties. Files are read as ISO-8859-1 like {@link Properties#load(java.io.InputStream)} unless another
+ * charset is given.
+ */
+public class PropertiesFileSource implements PropertySource {
+
+    private static final long DEFAULT_REVALIDATE_MILLIS = 2000;
+
+    /**
+     * The parsed properties for one version of the file.
+     */
+    private static final class Loaded {
+        private final FileContents contents;
+        private final Map<String, String> properties;
+
+        private Loaded(final FileContents contents, final Map<String, String> properties) {
+            this.contents = contents;
+            this.properties = properties;
+        }
+    }
+
+    private final Path file;
+    private final Charset charset;
+    private final long revalidateNanos;
+
+    private volatile Loaded loaded = null;
+    private final AtomicLong version = new AtomicLong();
+    private final AtomicLong lastRevalidated;
+
+    public PropertiesFileSource(final Path file) {
+        this(file, DEFAULT_REVALIDATE_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    public PropertiesFileSource(final Path file, final long revalidate, final TimeUnit unit) {
+        this(file, StandardCharsets.ISO_8859_1, revalidate, unit);
+    }
+
+    /**
+     * @param file the properties file
+     * @param charset the charset of the file
+     * @param revalidate how often the file is checked for changes
+     * @param unit the unit of the revalidation interval
+     */
+    public PropertiesFileSource(final Path file, final Charset charset, final long revalidate, final TimeUnit unit) {
+        this.file = file.normalize().toAbsolutePath();
+        this.charset = charset;
+        this.revalidateNanos = unit.toNanos(revalidate);
+        this.lastRevalidated = new AtomicLong(System.nanoTime());
+    }
+
+    @Override
+    public Map<String, String> getProperties() {
+        return this.loaded().properties;
+    }
+
+    @Override
+    public String lookup(final String key) {
+        return this.loaded().properties.get(key);
+    }
+
+    @Override
+    public Set<String> keys() {
+        return this.loaded().properties.keySet();
+    }
+
+    /**
+     * Checks the file for changes once the revalidation interval has passed.
+     *
+     * @return a version that changes when the file has changed
+     */
+    @Override
+    public long version() {
+        final long now = System.nanoTime();
+        final long last = this.lastRevalidated.get();
+        final Loaded current = this.loaded;
+        if (current != null && now - last >= this.revalidateNanos && this.lastRevalidated.compareAndSet(last, now)) {
+            final FileContents refreshed = current.contents.refresh(this.file, this.charset);
+            if (refreshed != current.contents) {
+                this.loaded = parse(refreshed);
+                this.version.incrementAndGet();
+            }
+        }
+        return this.version.get();
+    }
+
+    private Loaded loaded() {
+        Loaded current = this.loaded;
+        if (current == null) {
+            synchronized (this) {
+                current = this.loaded;
+                if (current == null) {
+                    current = parse(FileContents.read(this.file, this.charset));
+                    this.loaded = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    private Loaded parse(final FileContents contents) {
+        if (contents.text() == null) {
+            return new Loaded(contents, Collections.emptyMap());
+        }
+        final Properties properties = new Properties();
+        try {
+            properties.load(new StringReader(contents.text()));
+        } catch (IOException | IllegalArgumentException ex) {
+            throw new YyallRuntimeException(String.format("Could not parse properties from '%s'", this.file), ex);
+        }
+        final Map<String, String> map = new HashMap<>();
+        properties.forEach((key, value) -> map.put(String.valueOf(key), String.valueOf(value)));
+        return new Loaded(contents, Collections.unmodifiableMap(map));
+    }
+}
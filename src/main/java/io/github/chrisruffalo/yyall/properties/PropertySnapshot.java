@@ -0,0 +1,100 @@
+package io.github.chrisruffalo.yyall.properties;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * An immutable view of the combined properties of a list of property sources. Each snapshot has a version
+ * number that is larger than the snapshot it replaced and remembers the versions that the sources reported
+ * when it was built so that it can tell when it is out of date.
+ */
+public final class PropertySnapshot {
+
+    private static final long[] NO_VERSIONS = new long[0];
+
+    public static final PropertySnapshot EMPTY = new PropertySnapshot(0, Collections.emptyMap(), NO_VERSIONS);
+
+    private final long version;
+
+    private final Map<String, String> properties;
+
+    private final long[] sourceVersions;
+
+    private PropertySnapshot(final long version, final Map<String, String> properties, final long[] sourceVersions) {
+        this.version = version;
+        this.properties = properties;
+        this.sourceVersions = sourceVersions;
+    }
+
+    /**
+     * Combine the properties of the given sources. Sources later in the array override properties from sources
+     * earlier in the array. Nothing is read from the sources until a property is looked up and then only that
+     * property is read, starting from the last source and stopping at the first source that has it.
+     *
+     * @param version the version number of the new snapshot
+     * @param sources the sources to combine
+     * @return the new snapshot
+     */
+    public static PropertySnapshot of(final long version, final PropertySource[] sources) {
+        return of(version, sources, null);
+    }
+
+    /**
+     * Combine the properties of the given sources like of(long, PropertySource[]) but keep the properties already
+     * read from any source that reports the same version as it did for the previous snapshot. This keeps a source
+     * that is volatile from making every other source be read again.
+     *
+     * @param version the version number of the new snapshot
+     * @param sources the sources to combine
+     * @param previous the snapshot being replaced, can be null
+     * @return the new snapshot
+     */
+    public static PropertySnapshot of(final long version, final PropertySource[] sources, final PropertySnapshot previous) {
+        if (sources.length == 0) {
+            return new PropertySnapshot(version, Collections.emptyMap(), NO_VERSIONS);
+        }
+
+        // read versions first so that a change made while the properties are read makes the snapshot stale
+        final long[] sourceVersions = new long[sources.length];
+        for (int i = 0; i < sources.length; i++) {
+            sourceVersions[i] = sources[i].version();
+        }
+        final SourceProperties reuse = previous != null && previous.properties instanceof SourceProperties ? (SourceProperties) previous.properties : null;
+        return new PropertySnapshot(version, new SourceProperties(sources, sourceVersions, reuse), sourceVersions);
+    }
+
+    /**
+     * @return the version number of this snapshot
+     */
+    public long version() {
+        return this.version;
+    }
+
+    /**
+     * @return the combined properties, unmodifiable
+     */
+    public Map<String, String> properties() {
+        return this.properties;
+    }
+
+    /**
+     * Checks the sources for changes. A snapshot is current if it was built from the same number of sources
+     * and none of them report a different version. Volatile sources never make a snapshot stale because their
+     * properties are not kept, they are looked up in the source every time.
+     *
+     * @param sources the sources the snapshot was built from
+     * @return true if the snapshot still reflects the given sources
+     */
+    public boolean isCurrent(final PropertySource[] sources) {
+        if (sources.length != this.sourceVersions.length) {
+            return false;
+        }
+        for (int i = 0; i < sources.length; i++) {
+            final long current = sources[i].version();
+            if (current != this.sourceVersions[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
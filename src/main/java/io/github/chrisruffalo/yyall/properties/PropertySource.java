@@ -1,6 +1,8 @@
 package io.github.chrisruffalo.yyall.properties;
 
+import java.util.Collections;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * A property source is a way of providing properties
@@ -8,6 +10,46 @@ import java.util.Map;
  */
 public interface PropertySource {
 
+    /**
+     * Returned by sources that cannot tell when their properties change. The properties of
+     * these sources are looked up again every time they are needed (so lookup() should be cheap)
+     * and are never kept, which also means that they never make kept properties or cached values
+     * out of date.
+     */
+    long VOLATILE = -1;
+
     Map<String, String> getProperties();
 
+    /**
+     * Look up a single property. Configurations only ever look properties up one at a time so sources that are
+     * expensive to read in full (or that, like system properties, have to be copied to be read in full) should
+     * override this to read just the one property. By default the property is read from getProperties().
+     *
+     * @param key the property to look up
+     * @return the value of the property or null if this source does not have it
+     */
+    default String lookup(final String key) {
+        final Map<String, String> properties = this.getProperties();
+        return properties == null ? null : properties.get(key);
+    }
+
+    /**
+     * @return the names of every property in this source, by default the keys of getProperties()
+     */
+    default Set<String> keys() {
+        final Map<String, String> properties = this.getProperties();
+        return properties == null ? Collections.emptySet() : properties.keySet();
+    }
+
+    /**
+     * Reports changes to the properties of this source. The returned value must be different every time the
+     * properties change and stay the same while they do not so that the configuration can keep using the
+     * properties it already has. By default sources are treated as volatile.
+     *
+     * @return a value that changes when the properties change or VOLATILE
+     */
+    default long version() {
+        return VOLATILE;
+    }
+
 }
@@ -0,0 +1,244 @@
+package io.github.chrisruffalo.yyall.properties;
+
+import java.io.Closeable;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Wraps a source that is slow to read so that it is read in the background instead of when properties are needed.
+ * The source is read once when the wrapper is created and then again on a schedule, and readers are always given
+ * the properties from the last read that succeeded without waiting or locking. A read that fails keeps the last
+ * good properties. The version only changes when a read finds different properties.
+ * <p>
+ * The interval is either fixed or adaptive. An adaptive interval starts at the minimum, doubles (up to the maximum)
+ * every time a read finds nothing changed, and goes back to the minimum when something did change.
+ */
+public final class RefreshingPropertySource implements PropertySource, Closeable {
+
+    /**
+     * The properties from one successful read.
+     */
+    private static final class Loaded {
+        private final Map<String, String> properties;
+        private final long readAt;
+
+        private Loaded(final Map<String, String> properties, final long readAt) {
+            this.properties = properties;
+            this.readAt = readAt;
+        }
+    }
+
+    private final PropertySource delegate;
+    private final long minimumNanos;
+    private final long maximumNanos;
+    private final ScheduledExecutorService scheduler;
+    private final boolean ownsScheduler;
+
+    private volatile Loaded loaded;
+    private volatile long intervalNanos;
+    private volatile long lastDurationNanos = 0;
+    private volatile Exception lastFailure = null;
+    private volatile boolean closed = false;
+    // the next read, cancelled on close because a scheduler that was passed in keeps running
+    private volatile ScheduledFuture<?> next;
+
+    private final AtomicLong version = new AtomicLong();
+    private final AtomicLong refreshes = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    private RefreshingPropertySource(final PropertySource delegate, final long minimumNanos, final long maximumNanos, final ScheduledExecutorService scheduler) {
+        this.delegate = delegate;
+        this.minimumNanos = Math.max(1, minimumNanos);
+        this.maximumNanos = Math.max(this.minimumNanos, maximumNanos);
+        this.intervalNanos = this.minimumNanos;
+        this.ownsScheduler = scheduler == null;
+        this.scheduler = scheduler != null ? scheduler : Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "yyall-refresh-" + delegate.getClass().getSimpleName());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        // the first read has to succeed so that there is always something to serve
+        this.loaded = new Loaded(copy(delegate.getProperties()), System.nanoTime());
+        this.schedule();
+    }
+
+    /**
+     * @param delegate the source to read in the background
+     * @param interval how often to read the source
+     * @param unit the unit of the interval
+     * @return the wrapped source, reading from its own thread
+     */
+    public static RefreshingPropertySource every(final PropertySource delegate, final long interval, final TimeUnit unit) {
+        return new RefreshingPropertySource(delegate, unit.toNanos(interval), unit.toNanos(interval), null);
+    }
+
+    /**
+     * @param delegate the source to read in the background
+     * @param minimum the shortest interval, used after the properties change
+     * @param maximum the longest interval, reached while the properties don't change
+     * @param unit the unit of the intervals
+     * @return the wrapped source, reading from its own thread
+     */
+    public static RefreshingPropertySource adaptive(final PropertySource delegate, final long minimum, final long maximum, final TimeUnit unit) {
+        return new RefreshingPropertySource(delegate, unit.toNanos(minimum), unit.toNanos(maximum), null);
+    }
+
+    /**
+     * @param delegate the source to read in the background
+     * @param minimum the shortest interval, used after the properties change
+     * @param maximum the longest interval, the same as the minimum for a fixed interval
+     * @param unit the unit of the intervals
+     * @param scheduler runs the reads, it is not shut down when this source is closed
+     * @return the wrapped source
+     */
+    public static RefreshingPropertySource on(final PropertySource delegate, final long minimum, final long maximum, final TimeUnit unit, final ScheduledExecutorService scheduler) {
+        return new RefreshingPropertySource(delegate, unit.toNanos(minimum), unit.toNanos(maximum), scheduler);
+    }
+
+    @Override
+    public Map<String, String> getProperties() {
+        return this.loaded.properties;
+    }
+
+    @Override
+    public String lookup(final String key) {
+        return this.loaded.properties.get(key);
+    }
+
+    @Override
+    public Set<String> keys() {
+        return this.loaded.properties.keySet();
+    }
+
+    @Override
+    public long version() {
+        return this.version.get();
+    }
+
+    /**
+     * @param unit the unit to return the time in
+     * @return how long ago the properties being served were read
+     */
+    public long staleness(final TimeUnit unit) {
+        return unit.convert(System.nanoTime() - this.loaded.readAt, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @param unit the unit to return the time in
+     * @return how long the most recent read took, whether it succeeded or not
+     */
+    public long lastRefreshDuration(final TimeUnit unit) {
+        return unit.convert(this.lastDurationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @param unit the unit to return the time in
+     * @return the interval until the next read
+     */
+    public long interval(final TimeUnit unit) {
+        return unit.convert(this.intervalNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return the number of background reads that succeeded
+     */
+    public long refreshCount() {
+        return this.refreshes.get();
+    }
+
+    /**
+     * @return the number of background reads that failed
+     */
+    public long failureCount() {
+        return this.failures.get();
+    }
+
+    /**
+     * @return the reason that the most recent read failed or null if it succeeded
+     */
+    public Exception lastFailure() {
+        return this.lastFailure;
+    }
+
+    /**
+     * Read the source now, on the calling thread.
+     *
+     * @return true if the source was read, false if the read failed and the last good properties were kept
+     */
+    public synchronized boolean refresh() {
+        final long start = System.nanoTime();
+        final Map<String, String> properties;
+        try {
+            properties = copy(this.delegate.getProperties());
+        } catch (RuntimeException ex) {
+            this.lastDurationNanos = System.nanoTime() - start;
+            this.lastFailure = ex;
+            this.failures.incrementAndGet();
+            return false;
+        }
+        final long end = System.nanoTime();
+        this.lastDurationNanos = end - start;
+        this.lastFailure = null;
+        this.refreshes.incrementAndGet();
+
+        final boolean changed = !properties.equals(this.loaded.properties);
+        this.loaded = new Loaded(changed ? properties : this.loaded.properties, end);
+        if (changed) {
+            this.version.incrementAndGet();
+            this.intervalNanos = this.minimumNanos;
+        } else {
+            // doubling a long interval could overflow so anything past half of the maximum goes straight to it
+            this.intervalNanos = this.intervalNanos > this.maximumNanos / 2 ? this.maximumNanos : this.intervalNanos * 2;
+        }
+        return true;
+    }
+
+    private void schedule() {
+        if (this.closed) {
+            return;
+        }
+        try {
+            this.next = this.scheduler.schedule(() -> {
+                try {
+                    this.refresh();
+                } finally {
+                    this.schedule();
+                }
+            }, this.intervalNanos, TimeUnit.NANOSECONDS);
+            // close() may have run while this read was being scheduled
+            if (this.closed) {
+                this.next.cancel(false);
+            }
+        } catch (RejectedExecutionException ex) {
+            // the scheduler was shut down, there is nothing left to do
+        }
+    }
+
+    private static Map<String, String> copy(final Map<String, String> properties) {
+        return properties == null ? Collections.emptyMap() : Collections.unmodifiableMap(new HashMap<>(properties));
+    }
+
+    /**
+     * Stop reading the source. The last good properties are still served.
+     */
+    @Override
+    public void close() {
+        this.closed = true;
+        final ScheduledFuture<?> scheduled = this.next;
+        if (scheduled != null) {
+            scheduled.cancel(false);
+        }
+        if (this.ownsScheduler) {
+            this.scheduler.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package io.github.chrisruffalo.yyall.properties;
+
+import io.github.chrisruffalo.yyall.cache.BoundedCache;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The properties of several sources seen as one map without merging them. A property is looked up in each source,
+ * from the last source to the first, until one of them has it. Properties read from sources that report a version
+ * are kept, up to a bounded number per source, for as long as the sources report the same versions; sources that
+ * are volatile are asked every time.
+ */
+final class SourceProperties extends AbstractMap<String, String> {
+
+    // marks a property that a source does not have, the cache can't hold null
+    private static final String MISSING = new String();
+
+    // a source that never changes version would otherwise keep every name it was ever asked for
+    private static final int READ_CACHE_SIZE = 4096;
+
+    private final PropertySource[] sources;
+
+    private final long[] versions;
+
+    // properties read from each source, null for volatile sources
+    private final List<BoundedCache<String, String>> read;
+
+    private volatile Boolean empty;
+
+    SourceProperties(final PropertySource[] sources, final long[] versions, final SourceProperties previous) {
+        this.sources = sources.clone();
+        this.versions = versions;
+        this.read = new ArrayList<>(sources.length);
+        for (int i = 0; i < sources.length; i++) {
+            if (versions[i] != PropertySource.VOLATILE) {
+                final BoundedCache<String, String> kept = previous == null ? null : previous.read(sources[i], versions[i]);
+                this.read.add(kept != null ? kept : new BoundedCache<>(READ_CACHE_SIZE));
+            } else {
+                this.read.add(null);
+            }
+        }
+    }
+
+    /**
+     * @return the properties read from the given source if it was read at the same version, otherwise null
+     */
+    private BoundedCache<String, String> read(final PropertySource source, final long version) {
+        for (int i = 0; i < this.sources.length; i++) {
+            if (this.sources[i] == source) {
+                return this.versions[i] == version ? this.read.get(i) : null;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String get(final Object key) {
+        if (!(key instanceof String)) {
+            return null;
+        }
+        final String name = (String) key;
+        for (int i = this.sources.length - 1; i >= 0; i--) {
+            final String value;
+            final BoundedCache<String, String> read = this.read.get(i);
+            if (read == null) {
+                value = this.sources[i].lookup(name);
+            } else {
+                final PropertySource source = this.sources[i];
+                final String found = read.computeIfAbsent(name, k -> {
+                    final String looked = source.lookup(k);
+                    return looked == null ? MISSING : looked;
+                });
+                value = found == MISSING ? null : found;
+            }
+            if (value != null) {
+                return value;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public boolean containsKey(final Object key) {
+        return this.get(key) != null;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        Boolean isEmpty = this.empty;
+        if (isEmpty == null) {
+            isEmpty = Boolean.TRUE;
+            for (final PropertySource source : this.sources) {
+                if (!source.keys().isEmpty()) {
+                    isEmpty = Boolean.FALSE;
+                    break;
+                }
+            }
+            this.empty = isEmpty;
+        }
+        return isEmpty;
+    }
+
+    /**
+     * Only code that needs every property ends up here, the sources are read in full and merged.
+     */
+    @Override
+    public Set<Entry<String, String>> entrySet() {
+        final Map<String, String> merged = new HashMap<>();
+        for (final PropertySource source : this.sources) {
+            for (final String key : source.keys()) {
+                final String value = this.get(key);
+                if (value != null) {
+                    merged.put(key, value);
+                }
+            }
+        }
+        return merged.entrySet();
+    }
+}
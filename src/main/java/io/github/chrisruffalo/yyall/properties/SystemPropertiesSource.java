@@ -2,10 +2,11 @@ package io.github.chrisruffalo.yyall.properties;
 
 import java.util.HashMap;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.Set;
 
 /**
- * Loads system properties as a property source
+ * Loads system properties as a property source. System properties can be changed at any time without notice so
+ * the source is volatile and each property is read from the system properties when it is looked up.
  */
 public class SystemPropertiesSource implements PropertySource {
 
@@ -27,4 +28,21 @@ public class SystemPropertiesSource implements PropertySource {
         });
         return outputMap;
     }
+
+    /**
+     * Reads the one property without copying the rest.
+     */
+    @Override
+    public String lookup(final String key) {
+        if (key == null || key.isEmpty()) {
+            return null;
+        }
+        final Object value = System.getProperties().get(key);
+        return value == null ? null : String.valueOf(value);
+    }
+
+    @Override
+    public Set<String> keys() {
+        return System.getProperties().stringPropertyNames();
+    }
 }
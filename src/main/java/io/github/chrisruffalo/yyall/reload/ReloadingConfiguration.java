@@ -0,0 +1,232 @@
+package io.github.chrisruffalo.yyall.reload;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystem;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
+
+import io.github.chrisruffalo.yyall.YyallConfiguration;
+import io.github.chrisruffalo.yyall.exception.YyallRuntimeException;
+import io.github.chrisruffalo.yyall.resolver.DefaultStringResolver;
+import io.github.chrisruffalo.yyall.resolver.StringResolver;
+
+/**
+ * A configuration that is loaded again whenever its file changes. The file is watched from a background thread and
+ * bursts of changes (like an editor that truncates, writes, and then renames) are coalesced until the files have
+ * been quiet for the debounce interval. The new configuration is loaded and customized on that thread and only then
+ * published with a single reference swap, so readers never wait on a reload and never see a configuration that is
+ * only partly built. If the new content can't be loaded the last good configuration is kept.
+ */
+public final class ReloadingConfiguration implements Closeable {
+
+    private static final long DEFAULT_DEBOUNCE_MILLIS = 250;
+
+    private final Path path;
+    private final Set<Path> watched;
+    private final StringResolver resolver;
+    private final UnaryOperator<YyallConfiguration> customizer;
+    private final long debounceNanos;
+
+    private final AtomicReference<YyallConfiguration> current = new AtomicReference<>();
+    private final AtomicLong generation = new AtomicLong();
+    private volatile Exception lastFailure = null;
+
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> directories = new HashMap<>();
+    private final Thread watcher;
+    private volatile boolean running = true;
+
+    private ReloadingConfiguration(final Path path, final StringResolver resolver, final UnaryOperator<YyallConfiguration> customizer, final long debounce, final TimeUnit unit, final Path... alsoWatch) {
+        this.path = path.normalize().toAbsolutePath();
+        this.resolver = resolver;
+        this.customizer = customizer;
+        this.debounceNanos = unit.toNanos(debounce);
+
+        final Set<Path> files = new LinkedHashSet<>();
+        files.add(this.path);
+        for (final Path other : alsoWatch) {
+            files.add(other.normalize().toAbsolutePath());
+        }
+        this.watched = Collections.unmodifiableSet(files);
+
+        // the first load is done before anything is watched and has to succeed
+        this.current.set(this.build());
+
+        final FileSystem fileSystem = this.path.getFileSystem();
+        try {
+            this.watchService = fileSystem.newWatchService();
+        } catch (IOException ex) {
+            throw new YyallRuntimeException(String.format("Could not watch configuration '%s'", this.path), ex);
+        }
+        try {
+            // directories are watched instead of the files so that files that are replaced are still seen
+            for (final Path file : this.watched) {
+                final Path directory = file.getParent();
+                if (!this.directories.containsValue(directory)) {
+                    final WatchKey key = directory.register(this.watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+                    this.directories.put(key, directory);
+                }
+            }
+        } catch (IOException ex) {
+            // nothing else will ever close the watch service (and its thread) if the constructor fails
+            try {
+                this.watchService.close();
+            } catch (IOException closeEx) {
+                ex.addSuppressed(closeEx);
+            }
+            throw new YyallRuntimeException(String.format("Could not watch configuration '%s'", this.path), ex);
+        }
+
+        this.watcher = new Thread(this::watch, "yyall-reload-" + this.path.getFileName());
+        this.watcher.setDaemon(true);
+        this.watcher.start();
+    }
+
+    public static ReloadingConfiguration watch(final String pathToConfig) {
+        return watch(Paths.get(pathToConfig));
+    }
+
+    public static ReloadingConfiguration watch(final Path pathToConfig) {
+        return watch(pathToConfig, UnaryOperator.identity());
+    }
+
+    /**
+     * @param pathToConfig the configuration file to load and watch
+     * @param customizer applied to every loaded configuration before it is published, for example to add property
+     *                   sources or a cache, an exception from the customizer rejects the configuration
+     * @return the loaded configuration that will be reloaded as the file changes
+     */
+    public static ReloadingConfiguration watch(final Path pathToConfig, final UnaryOperator<YyallConfiguration> customizer) {
+        return watch(pathToConfig, new DefaultStringResolver(), customizer, DEFAULT_DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param pathToConfig the configuration file to load and watch
+     * @param resolver the resolver for every loaded configuration
+     * @param customizer applied to every loaded configuration before it is published
+     * @param debounce how long the files have to be quiet after a change before the configuration is reloaded
+     * @param unit the unit of the debounce interval
+     * @param alsoWatch other files (like property files used by the customizer) that also cause a reload when changed
+     * @return the loaded configuration that will be reloaded as the files change
+     */
+    public static ReloadingConfiguration watch(final Path pathToConfig, final StringResolver resolver, final UnaryOperator<YyallConfiguration> customizer, final long debounce, final TimeUnit unit, final Path... alsoWatch) {
+        return new ReloadingConfiguration(pathToConfig, resolver, customizer, debounce, unit, alsoWatch);
+    }
+
+    /**
+     * @return the most recent configuration that loaded successfully
+     */
+    public YyallConfiguration current() {
+        return this.current.get();
+    }
+
+    public String get(final String property) {
+        return this.current().get(property);
+    }
+
+    public String format(final String inputString) {
+        return this.current().format(inputString);
+    }
+
+    /**
+     * @return the number of times that the configuration has been reloaded and published
+     */
+    public long generation() {
+        return this.generation.get();
+    }
+
+    /**
+     * @return the reason that the most recent reload failed or null if it succeeded
+     */
+    public Exception lastFailure() {
+        return this.lastFailure;
+    }
+
+    /**
+     * Load the configuration again now, on the calling thread, instead of waiting for a change.
+     *
+     * @return true if the configuration was loaded and published, false if the last good configuration was kept
+     */
+    public synchronized boolean reload() {
+        final YyallConfiguration loaded;
+        try {
+            loaded = this.build();
+        } catch (RuntimeException ex) {
+            this.lastFailure = ex;
+            return false;
+        }
+        this.current.set(loaded);
+        this.lastFailure = null;
+        this.generation.incrementAndGet();
+        return true;
+    }
+
+    private YyallConfiguration build() {
+        return this.customizer.apply(YyallConfiguration.load(this.path.toString(), this.resolver));
+    }
+
+    private void watch() {
+        while (this.running) {
+            try {
+                boolean changed = this.drain(this.watchService.take());
+                // keep collecting changes until there haven't been any for the debounce interval
+                while (changed) {
+                    final WatchKey next = this.watchService.poll(this.debounceNanos, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    this.drain(next);
+                }
+                if (changed && this.running) {
+                    this.reload();
+                }
+            } catch (InterruptedException | ClosedWatchServiceException ex) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Take the pending events from a key and reset it.
+     *
+     * @return true if any of the events were for a watched file
+     */
+    private boolean drain(final WatchKey key) {
+        boolean changed = false;
+        final Path directory = this.directories.get(key);
+        for (final WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                changed = true;
+            } else if (directory != null && this.watched.contains(directory.resolve((Path) event.context()))) {
+                changed = true;
+            }
+        }
+        key.reset();
+        return changed;
+    }
+
+    /**
+     * Stop watching for changes. The current configuration is still available.
+     */
+    @Override
+    public void close() throws IOException {
+        this.running = false;
+        this.watchService.close();
+        this.watcher.interrupt();
+    }
+}
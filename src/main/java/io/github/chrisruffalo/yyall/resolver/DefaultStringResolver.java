@@ -1,5 +1,6 @@
 package io.github.chrisruffalo.yyall.resolver;
 
+import java.util.AbstractMap;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -9,28 +10,36 @@ import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
-import io.github.chrisruffalo.yyall.exception.YyallRuntimeException;
+import io.github.chrisruffalo.yyall.cache.BoundedCache;
 import io.github.chrisruffalo.yyall.bean.PropertyNavigator;
-import org.apache.commons.lang3.ArrayUtils;
-import org.apache.commons.lang3.StringUtils;
 
 public class DefaultStringResolver implements StringResolver {
   
   private final static String DEFAULT_START_TOKEN = "${";
   private final static String DEFAULT_END_TOKEN = "}";
   private final static String DEFAULT_PIPE_TOKEN = "|";
+
+  private final static int DEFAULT_TEMPLATE_CACHE_SIZE = 1024;
   
   private String startToken = DEFAULT_START_TOKEN;
   private String endToken = DEFAULT_END_TOKEN;
   private String pipeToken = DEFAULT_PIPE_TOKEN;
   
   private final Set<String> literalQuoteSet = new HashSet<>();
-  
-  private Pattern tokenPattern = null;
+
+  private String literalQuotes = "";
+
+  // compiled templates are only valid for the token settings they were compiled with so the
+  // cache is replaced whenever those settings change
+  private volatile BoundedCache<String, Template> templates = null;
+
+  // the parsed alternatives of token text, also replaced when the token settings change
+  private volatile BoundedCache<String, Template.Alternative[]> alternatives = null;
+
+  private String excluded = "";
   
   public DefaultStringResolver() {
     this.literalQuoteSet.add("'");
@@ -49,21 +58,47 @@ public class DefaultStringResolver implements StringResolver {
   }
   
   private void recompileMatch() {
-    // creates a non-greedy match for a token that is between the given token strings but that does not contain the token itself
-    // so that things like ${${env}-${section}} can resolve through the recursive resolution process
-    final String pattern = String.format("(?:%s)([^%s]+?)(?:%s)", Pattern.quote(this.startToken), Pattern.quote(this.startToken + this.endToken), Pattern.quote(this.endToken));
-    this.tokenPattern = Pattern.compile(pattern);
+    // the text of a token can't contain any character of the token itself, nested tokens like ${${env}-${section}}
+    // are resolved from the inside out so by the time the outer token is closed its text is plain again
+    this.literalQuotes = String.join("", this.literalQuoteSet);
+    this.excluded = this.startToken + this.endToken;
+    this.templates = new BoundedCache<>(DEFAULT_TEMPLATE_CACHE_SIZE);
+    this.alternatives = new BoundedCache<>(DEFAULT_TEMPLATE_CACHE_SIZE);
   }
-  
-  private List<String> findMatchingTokens(final String input) {
-    final List<String> matches = new ArrayList<>();
-    
-    final Matcher matcher = this.tokenPattern.matcher(input);
-    while(matcher.find()) {
-      matches.add(matcher.group(1));
+
+  String startToken() {
+    return this.startToken;
+  }
+
+  String endToken() {
+    return this.endToken;
+  }
+
+  @Override
+  public boolean containsTokens(final String inputString) {
+    return inputString != null && inputString.contains(this.startToken);
+  }
+
+  /**
+   * Get the compiled form of the given string from the template cache, compiling it if needed. Strings that
+   * do not contain the start token at all are not cached.
+   *
+   * @param input the string to compile
+   * @return the compiled template
+   */
+  Template template(final String input) {
+    if (!input.contains(this.startToken)) {
+      return Template.literal(input);
     }
-    
-    return Collections.unmodifiableList(matches);
+    return this.templates.computeIfAbsent(input, key -> Template.compile(key, this.startToken, this.endToken, this.pipeToken, this.literalQuotes));
+  }
+
+  /**
+   * @param text the text between a start and end token
+   * @return the alternatives of the token, from the cache if they were parsed before
+   */
+  Template.Alternative[] alternatives(final String text) {
+    return this.alternatives.computeIfAbsent(text, key -> Template.alternatives(key, this.pipeToken, this.literalQuotes));
   }
   
   private Map<String, String> propertiesToMap(final Properties properties) {
@@ -92,119 +127,284 @@ public class DefaultStringResolver implements StringResolver {
 
     @SuppressWarnings("unchecked")
     public String resolve(final String inputString, final Object yaml, final Map<String, String>... propertyMaps) {
-        // merge property map input
-        final Map<String, String> properties = new HashMap<>();
+        // check for the start token before anything else so that plain strings are returned as they are
+        if (!this.containsTokens(inputString)) {
+            return inputString;
+        }
+        final Map<String, String> properties = merge(propertyMaps);
+
+        return this.resolve(Collections.emptySet(), inputString, navigator(yaml), properties);
+    }
+
+    /**
+     * Resolve the input against an arbitrary lookup for document keys instead of a document. This lets
+     * the reference graph hand already resolved values back into the resolver.
+     */
+    String resolve(final String inputString, final Function<String, Object> lookup, final Map<String, String> properties) {
+        return this.resolve(Collections.emptySet(), inputString, lookup, properties);
+    }
+
+    private static Function<String, Object> navigator(final Object yaml) {
+        if (yaml == null) {
+            return null;
+        }
+        return key -> PropertyNavigator.getProperty(yaml, key);
+    }
+
+    /**
+     * Merge property map input, earlier maps take precedence over later ones and a single
+     * map is used as it is without being copied. Several maps are not copied either, a key is
+     * looked up in each map in turn until one of them has it.
+     */
+    @SafeVarargs
+    static Map<String, String> merge(final Map<String, String>... propertyMaps) {
+        Map<String, String> properties = Collections.emptyMap();
         if(propertyMaps != null && propertyMaps.length > 0) {
-            ArrayUtils.reverse(propertyMaps);
-            Arrays.stream(propertyMaps).forEach(map -> {
-                if(map != null && !map.isEmpty()) {
-                    properties.putAll(map);
+            final List<Map<String, String>> present = new ArrayList<>(propertyMaps.length);
+            for (final Map<String, String> map : propertyMaps) {
+                if (map != null && !map.isEmpty()) {
+                    present.add(map);
+                }
+            }
+            if (present.size() == 1) {
+                properties = present.get(0);
+            } else if (present.size() > 1) {
+                properties = new Layered(present);
+            }
+        }
+        return properties;
+    }
+
+    /**
+     * Property maps layered over each other, the first map that has a key wins.
+     */
+    private static final class Layered extends AbstractMap<String, String> {
+
+        private final List<Map<String, String>> layers;
+
+        private Layered(final List<Map<String, String>> layers) {
+            this.layers = layers;
+        }
+
+        @Override
+        public String get(final Object key) {
+            for (final Map<String, String> layer : this.layers) {
+                final String value = layer.get(key);
+                if (value != null) {
+                    return value;
                 }
-            });
+            }
+            return null;
         }
 
-        // store previous values in a hash set so that we can
-        // do resolution in a way that prevents cyclic resolution
-        // (so that we can't get stuck resolving and re-resolving the same properties)
-        final Set<String> previousValues = new HashSet<>();
+        @Override
+        public boolean containsKey(final Object key) {
+            return this.get(key) != null;
+        }
 
-        return this.resolve("", new HashSet<>(), previousValues, inputString, yaml, properties);
+        @Override
+        public Set<Entry<String, String>> entrySet() {
+            final Map<String, String> merged = new HashMap<>();
+            for (int i = this.layers.size() - 1; i >= 0; i--) {
+                merged.putAll(this.layers.get(i));
+            }
+            return merged.entrySet();
+        }
     }
 
-    private String resolve(final String prefix, final Set<String> guardPropertySet, final Set<String> previousValues, final String inputString, final Object yaml, final Map<String, String> properties) {
+    private String resolve(final Set<String> guardPropertySet, final String inputString, final Function<String, Object> lookup, final Map<String, String> properties) {
         // ==============
         // i took this (almost) wholesale from ee-config, another of my projects
         // https://github.com/chrisruffalo/ee-config/blob/master/src/main/java/com/github/chrisruffalo/eeconfig/strategy/property/DefaultPropertyResolver.java
         // ==============
 
-        // return same string if it is null or empty
-        if(inputString == null || inputString.isEmpty()) {
+        // return same string if it is null, empty, or has nothing to resolve
+        if(inputString == null || inputString.isEmpty() || !inputString.contains(this.startToken)) {
             return inputString;
         }
 
-        // working string copy
+        // nested tokens are resolved in the same pass as the tokens around them so the string only has to be scanned
+        // again when a replacement brought new start or end tokens into it, which is rare
         String workingString = inputString;
+        Set<String> guard = guardPropertySet;
+        Set<String> previousValues = null;
+        while (true) {
+            final Scanner scanner = new Scanner(guard, lookup, properties);
+            final String scanned = scanner.scan(workingString);
+            if (!scanner.reparse || scanned.equals(workingString)) {
+                return scanned;
+            }
 
-        // can't do contains check here because working string is contained right at the start
-        // can only do it after at least some potential transform steps
-        do {
-            // add working string updates to previous values
+            // store previous values so that a scan can't go back and forth between the same strings
+            if (previousValues == null) {
+                previousValues = new HashSet<>();
+            }
             previousValues.add(workingString);
+            if (previousValues.contains(scanned)) {
+                return scanned;
+            }
 
-            // resolve special tokens
-            final List<String> foundTokens = this.findMatchingTokens(workingString);
+            // tokens that were already tried are not tried again
+            guard = new HashSet<>(guard);
+            guard.addAll(scanner.processed);
+            workingString = scanned;
+        }
+    }
 
-            for(final String token : foundTokens) {
-                if(token == null || token.isEmpty() || guardPropertySet.contains(token)) {
-                    continue;
+    /**
+     * Resolves a string in a single pass over the start and end tokens of its compiled template, so a string that is
+     * resolved again is not searched for tokens again. Text between the tokens is copied to the output and the output
+     * position of every open start token is kept on a stack. When an end token closes the innermost open token the
+     * text of that token (with any tokens nested in it already replaced) is read back from the output and replaced
+     * with its value. Like before, a token is only resolved if its text doesn't contain any of the characters of
+     * the start or end token (so a token with an unresolved nested token stays as it is) and when start tokens
+     * overlap, like the "{{" in "{{{x}}}", the innermost one opens the token.
+     */
+    private final class Scanner {
+
+        private final Set<String> guard;
+        private final Function<String, Object> lookup;
+        private final Map<String, String> properties;
+
+        // the text of every token that was tried
+        private final List<String> processed = new ArrayList<>();
+
+        // a replacement brought start or end tokens into the output
+        private boolean reparse = false;
+
+        private Scanner(final Set<String> guard, final Function<String, Object> lookup, final Map<String, String> properties) {
+            this.guard = guard;
+            this.lookup = lookup;
+            this.properties = properties;
+        }
+
+        private String scan(final String input) {
+            final String start = DefaultStringResolver.this.startToken;
+            final String end = DefaultStringResolver.this.endToken;
+            if (start.isEmpty() || end.isEmpty()) {
+                return input;
+            }
+
+            // a string without any innermost token has nothing that can be resolved and has no marks
+            final int[] marks = DefaultStringResolver.this.template(input).marks();
+            if (marks.length == 0) {
+                return input;
+            }
+
+            final StringBuilder output = new StringBuilder(input.length() + 16);
+            int[] open = new int[4];
+            int depth = 0;
+            int index = 0;
+            for (final int mark : marks) {
+                if (mark < 0) {
+                    final int at = ~mark;
+                    output.append(input, index, at);
+                    final int tokenStart = this.tokenStart(output, open[--depth], start);
+                    final String replacement = tokenStart < 0 ? null : this.replace(output.substring(tokenStart + start.length()));
+                    if (replacement != null) {
+                        output.setLength(tokenStart);
+                        output.append(replacement);
+                        this.reparse |= replacement.contains(start) || replacement.contains(end);
+                    } else {
+                        output.append(end);
+                    }
+                    index = at + end.length();
+                } else {
+                    output.append(input, index, mark);
+                    if (depth == open.length) {
+                        open = Arrays.copyOf(open, depth * 2);
+                    }
+                    open[depth++] = output.length();
+                    output.append(start);
+                    index = mark + start.length();
                 }
-                
-                // split token on pipe
-                final String[] tokenParts = StringUtils.split(token, this.pipeToken);
-                
-                for(String currentToken : tokenParts) {
-                  if(currentToken == null || currentToken.isEmpty() || guardPropertySet.contains(token)) {
+            }
+            output.append(input, index, input.length());
+            return output.toString();
+        }
+
+        /**
+         * The text of a token can't contain any character of the start or end token so the token opens right
+         * before the last of those characters in the output. Usually that is the open start token itself but
+         * it can be a start token that overlaps it.
+         *
+         * @param output the output so far
+         * @param opened the output position of the innermost open start token
+         * @param start the start token
+         * @return the output position of the start token of the token, -1 if the output doesn't end with a token
+         */
+        private int tokenStart(final StringBuilder output, final int opened, final String start) {
+            int last = output.length() - 1;
+            while (last >= opened && !DefaultStringResolver.this.isExcluded(output.charAt(last))) {
+                last--;
+            }
+            final int tokenStart = last + 1 - start.length();
+            if (last == output.length() - 1 || tokenStart < opened) {
+                return -1;
+            }
+            for (int i = 0; i < start.length(); i++) {
+                if (output.charAt(tokenStart + i) != start.charAt(i)) {
+                    return -1;
+                }
+            }
+            return tokenStart;
+        }
+
+        /**
+         * @param text the text between the start and end token
+         * @return the value of the token or null if it can't be resolved
+         */
+        private String replace(final String text) {
+            if (this.guard.contains(text)) {
+                return null;
+            }
+            this.processed.add(text);
+
+            for(final Template.Alternative alternative : DefaultStringResolver.this.alternatives(text)) {
+                final String currentToken = alternative.key();
+
+                // start with null property string
+                String property = null;
+
+                // if the token is a literal then we should use that as the property
+                if(alternative.isLiteral()) {
+                    property = DefaultStringResolver.this.resolve(Collections.emptySet(), alternative.literal(), null, this.properties);
+                } else if (this.guard.contains(currentToken)) {
+                    // a key that is already being resolved can't be used to resolve itself
                     continue;
-                  }
-                  // trim token
-                  currentToken = currentToken.trim();
-                  
-                  // start with null property string                
-                  String property = null;
-                  
-                  // if the token is a literal then we should use that as the property
-                  if(currentToken.charAt(0) == currentToken.charAt(currentToken.length() - 1) && this.literalQuoteSet.contains(String.valueOf(currentToken.charAt(0)))) {
-                    final String literal = currentToken.substring(1, currentToken.length() - 1);
-                    property = this.resolve(literal, properties);
-                  } 
- 
-                  // next, if the property is still null, try and read yaml
-                  // (nested maps - which the yaml object is - can be read with BeanUtils)
-                  if(property == null && yaml != null) {
-                      //final Object found = PropertyUtils.getProperty(yaml, currentToken);
-                      try {
-                          final Object found = PropertyNavigator.getProperty(yaml, currentToken);
-                          if (found != null) {
-                              property = found.toString();
-                          }
-                      } catch (IndexOutOfBoundsException iex) {
-                          throw new YyallRuntimeException(String.format("The property '%s' does not point to an indexed value that exists", currentToken), iex);
-                      }
-                  }
-
-                  // if the property is still null look it up
-                  if(property == null) {
-                      property = properties.get(currentToken);
-                  }
-  
-                  // skip null properties
-                  if(property != null) {
-                    // get prefix
-                    String foundPrefix = "";
-                    if(currentToken.lastIndexOf(".") >= 1) {
-                      foundPrefix = currentToken;
+                }
+
+                // next, if the property is still null, try and read yaml
+                // (a missing path, including an index past the end of a list, is just a miss)
+                if(property == null && this.lookup != null) {
+                    final Object found = this.lookup.apply(currentToken);
+                    if (found != null) {
+                        property = found.toString();
                     }
-                    
-                    // resolve property before replacing
-                    final HashSet<String> resolveGuardSet = new HashSet<>(guardPropertySet);
+                }
+
+                // if the property is still null look it up
+                if(property == null) {
+                    property = this.properties.get(currentToken);
+                }
+
+                // skip null properties
+                if(property != null) {
+                    // resolve property before replacing, values without tokens are used as they are
+                    if (!property.contains(DefaultStringResolver.this.startToken)) {
+                        return property;
+                    }
+                    final Set<String> resolveGuardSet = new HashSet<>(this.guard);
                     resolveGuardSet.add(currentToken);
-                    final String resolvedProperty = this.resolve(foundPrefix, resolveGuardSet, previousValues, property, yaml, properties);
-  
-                    // do actual replacement against _WHOLE TOKEN_
-                    workingString = StringUtils.replace(workingString, this.startToken + token + this.endToken, resolvedProperty);
-                    
-                    // done
-                    break;
-                  }
-                } // done with token subpart
-            } // done with token
-            
-            // guard against all found tokens
-            guardPropertySet.addAll(foundTokens);
-
-        } while (!previousValues.contains(workingString));
-
-        return workingString;
+                    return DefaultStringResolver.this.resolve(resolveGuardSet, property, this.lookup, this.properties);
+                }
+            }
+            return null;
+        }
+    }
+
+    private boolean isExcluded(final char character) {
+        return this.excluded.indexOf(character) >= 0;
     }
- 
+
 }
@@ -0,0 +1,201 @@
+package io.github.chrisruffalo.yyall.resolver;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import io.github.chrisruffalo.yyall.bean.PropertyPaths;
+
+/**
+ * Builds a resolved copy of a loaded tree on a fork/join pool, with every map and list in the tree resolved as its
+ * own task. The strings in the tree have usually already been resolved by path (see
+ * {@link ReferenceGraph#resolve(ForkJoinPool)}) so building the tree is mostly copying. Like {@link TreeResolver}
+ * only the maps and lists on the path to a string that changed are copied (and made unmodifiable) and everything else
+ * is shared with the original tree.
+ *
+ * Values are found by their path, so a tree where the same map or list appears more than once (through an alias,
+ * or inside itself) can't be built this way. Those trees are resolved with {@link TreeResolver} instead.
+ */
+public class ParallelTreeResolver {
+
+    private final Predicate<String> needsResolution;
+
+    private final Function<String, ?> resolvedByPath;
+
+    private final Function<String, ?> resolution;
+
+    /**
+     * @param needsResolution decides if a string needs to be resolved at all
+     * @param resolvedByPath the resolved value of the string at a path, null if it isn't known
+     * @param resolution resolves a single string, used for map keys and strings that weren't resolved by path
+     */
+    public ParallelTreeResolver(final Predicate<String> needsResolution, final Function<String, ?> resolvedByPath, final Function<String, ?> resolution) {
+        this.needsResolution = needsResolution;
+        this.resolvedByPath = resolvedByPath;
+        this.resolution = resolution;
+    }
+
+    /**
+     * @param root the root of the tree
+     * @param pool the pool to resolve on
+     * @return the resolved tree, the root itself if nothing in it needed to be resolved
+     */
+    public Object resolve(final Object root, final ForkJoinPool pool) {
+        if (!(root instanceof Map) && !(root instanceof List)) {
+            return this.resolveValue("", root);
+        }
+        if (shared(root)) {
+            return new TreeResolver(this.needsResolution, this.resolution).resolve(root);
+        }
+        return pool.invoke(new Container("", root));
+    }
+
+    /**
+     * @return true if any map or list appears in the tree more than once
+     */
+    private static boolean shared(final Object root) {
+        final Set<Object> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        final Deque<Object> pending = new ArrayDeque<>();
+        pending.push(root);
+        while (!pending.isEmpty()) {
+            final Object node = pending.pop();
+            if (!seen.add(node)) {
+                return true;
+            }
+            final Iterable<?> children = node instanceof Map ? ((Map<?, ?>) node).values() : (List<?>) node;
+            for (final Object child : children) {
+                if (child instanceof Map || child instanceof List) {
+                    pending.push(child);
+                }
+            }
+        }
+        return false;
+    }
+
+    private Object resolveValue(final String path, final Object value) {
+        if (!(value instanceof String)) {
+            return value;
+        }
+        final String string = (String) value;
+        if (!this.needsResolution.test(string)) {
+            return string;
+        }
+        Object resolved = this.resolvedByPath.apply(path);
+        if (resolved == null) {
+            resolved = this.resolution.apply(string);
+        }
+        // keep the original instance when nothing changed so that the parent doesn't need to be copied
+        return string.equals(resolved) ? string : resolved;
+    }
+
+    private Object resolveKey(final Object key) {
+        if (!(key instanceof String) || !this.needsResolution.test((String) key)) {
+            return key;
+        }
+        final Object resolved = this.resolution.apply((String) key);
+        return key.equals(resolved) ? key : resolved;
+    }
+
+    /**
+     * Resolves one map or list, with a task of its own for each map or list in it.
+     */
+    private final class Container extends RecursiveTask<Object> {
+
+        private final String path;
+        private final Object node;
+
+        private Container(final String path, final Object node) {
+            this.path = path;
+            this.node = node;
+        }
+
+        @Override
+        protected Object compute() {
+            if (this.node instanceof Map) {
+                return this.map((Map<?, ?>) this.node);
+            }
+            return this.list((List<?>) this.node);
+        }
+
+        private Object map(final Map<?, ?> map) {
+            final Object[] keys = new Object[map.size()];
+            final Object[] values = new Object[map.size()];
+            final List<Container> children = new ArrayList<>();
+            int index = 0;
+            for (final Map.Entry<?, ?> entry : map.entrySet()) {
+                keys[index] = resolveKey(entry.getKey());
+                values[index] = this.child(PropertyPaths.child(this.path, entry.getKey()), entry.getValue(), children);
+                index++;
+            }
+            ForkJoinTask.invokeAll(children);
+
+            Map<Object, Object> copy = null;
+            index = 0;
+            for (final Map.Entry<?, ?> entry : map.entrySet()) {
+                final Object value = joined(values[index]);
+                if (copy == null && (keys[index] != entry.getKey() || value != entry.getValue())) {
+                    copy = new LinkedHashMap<>(Math.max(16, (int) (map.size() / 0.75f) + 1));
+                    int copied = 0;
+                    for (final Map.Entry<?, ?> previous : map.entrySet()) {
+                        if (copied++ == index) {
+                            break;
+                        }
+                        copy.put(previous.getKey(), previous.getValue());
+                    }
+                }
+                if (copy != null) {
+                    copy.put(keys[index], value);
+                }
+                index++;
+            }
+            return copy == null ? map : Collections.unmodifiableMap(copy);
+        }
+
+        private Object list(final List<?> list) {
+            final Object[] values = new Object[list.size()];
+            final List<Container> children = new ArrayList<>();
+            for (int i = 0; i < values.length; i++) {
+                values[i] = this.child(this.path + "[" + i + "]", list.get(i), children);
+            }
+            ForkJoinTask.invokeAll(children);
+
+            List<Object> copy = null;
+            for (int i = 0; i < values.length; i++) {
+                final Object original = list.get(i);
+                final Object value = joined(values[i]);
+                if (copy == null && value != original) {
+                    copy = new ArrayList<>(list.subList(0, i));
+                }
+                if (copy != null) {
+                    copy.add(value);
+                }
+            }
+            return copy == null ? list : Collections.unmodifiableList(copy);
+        }
+
+        // containers become tasks that are run together, anything else is resolved right away
+        private Object child(final String path, final Object value, final List<Container> children) {
+            if (value instanceof Map || value instanceof List) {
+                final Container task = new Container(path, value);
+                children.add(task);
+                return task;
+            }
+            return resolveValue(path, value);
+        }
+
+        private Object joined(final Object value) {
+            return value instanceof Container ? ((Container) value).join() : value;
+        }
+    }
+}
@@ -0,0 +1,495 @@
+package io.github.chrisruffalo.yyall.resolver;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Function;
+
+import io.github.chrisruffalo.yyall.bean.PropertyNavigator;
+import io.github.chrisruffalo.yyall.bean.PropertyPaths;
+
+/**
+ * The references between the keys of a whole document. The document is scanned once and every value that contains
+ * tokens becomes a node with an edge to each document key that it would be resolved from. The nodes are then put in
+ * topological order so that every key can be resolved exactly once, after the keys it refers to.
+ *
+ * A token only depends on the alternatives that could actually be used: the alternatives up to and including the
+ * first literal, document key, or property that is present. Keys that are built from other tokens (like
+ * "${${env}.host}") can't be known ahead of time so those are looked up when the value is resolved.
+ *
+ * A graph is built against a fixed document and set of properties and is not updated if either changes.
+ */
+public final class ReferenceGraph {
+
+    // stands in for an inner token while looking for the tokens around it, a noncharacter so that it can't
+    // appear in a key and isn't trimmed away like a control character would be
+    private static final String PLACEHOLDER = "\uFFFF";
+
+    private static final int[] NO_REFERENCES = new int[0];
+
+    private final Object root;
+    private final DefaultStringResolver resolver;
+    private final Map<String, String> properties;
+
+    // every scalar in the document by path, in document order
+    private final Map<String, Object> leaves = new LinkedHashMap<>();
+
+    // nodes by id
+    private final List<String> keys = new ArrayList<>();
+    private final List<Object> values = new ArrayList<>();
+    private final List<int[]> references = new ArrayList<>();
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final Set<String> dynamic = new LinkedHashSet<>();
+
+    // node ids with the referenced nodes before the nodes that refer to them
+    private int[] order;
+
+    // nodes that are on a cycle or refer to a key on one
+    private boolean[] cyclic;
+
+    private final List<List<String>> cycles = new ArrayList<>();
+
+    private ReferenceGraph(final Object root, final DefaultStringResolver resolver, final Map<String, String> properties) {
+        this.root = root;
+        this.resolver = resolver;
+        this.properties = properties;
+    }
+
+    /**
+     * Scan the document and build the graph of its references.
+     *
+     * @param root the loaded document
+     * @param resolver the resolver that determines the token syntax and is used to resolve the values
+     * @param propertyMaps properties available to the tokens, earlier maps take precedence
+     * @return the graph
+     */
+    @SafeVarargs
+    public static ReferenceGraph build(final Object root, final DefaultStringResolver resolver, final Map<String, String>... propertyMaps) {
+        final ReferenceGraph graph = new ReferenceGraph(root, resolver, DefaultStringResolver.merge(propertyMaps));
+        graph.scan();
+        graph.sort();
+        return graph;
+    }
+
+    private void scan() {
+        PropertyPaths.walk(this.root, (path, value) -> {
+            if (value != null && !(value instanceof Map) && !(value instanceof List)) {
+                this.leaves.put(path, value);
+            }
+        });
+
+        final Deque<Integer> pending = new ArrayDeque<>();
+        for (final Map.Entry<String, Object> leaf : this.leaves.entrySet()) {
+            if (leaf.getValue() instanceof String && this.resolver.containsTokens((String) leaf.getValue())) {
+                this.node(leaf.getKey(), leaf.getValue(), pending);
+            }
+        }
+
+        // nodes are added as they are found so referenced keys that are not leaves (or that are spelled
+        // differently than their leaf path) are scanned as well
+        while (!pending.isEmpty()) {
+            final int id = pending.pop();
+            final Object value = this.values.get(id);
+            if (!(value instanceof String)) {
+                // subtrees are resolved from their string form so what they refer to is only known then
+                if (value instanceof Map || value instanceof List) {
+                    this.dynamic.add(this.keys.get(id));
+                }
+                continue;
+            }
+            final Map<String, Object> targets = new LinkedHashMap<>();
+            if (!this.collect((String) value, targets)) {
+                this.dynamic.add(this.keys.get(id));
+            }
+            final int[] edges = new int[targets.size()];
+            int edge = 0;
+            for (final Map.Entry<String, Object> target : targets.entrySet()) {
+                edges[edge++] = this.node(target.getKey(), target.getValue(), pending);
+            }
+            this.references.set(id, edges);
+        }
+    }
+
+    private int node(final String key, final Object value, final Deque<Integer> pending) {
+        final Integer existing = this.ids.get(key);
+        if (existing != null) {
+            return existing;
+        }
+        final int id = this.keys.size();
+        this.ids.put(key, id);
+        this.keys.add(key);
+        this.values.add(value);
+        this.references.add(NO_REFERENCES);
+        pending.push(id);
+        return id;
+    }
+
+    /**
+     * Find the document keys that the value refers to. Inner tokens are found first and then replaced with a
+     * placeholder to find the tokens around them, the same way that the resolver works from the inside out.
+     *
+     * @param value the raw value
+     * @param targets collects the referenced keys and their values
+     * @return false if the value builds keys from other tokens and so has references that can't be known
+     */
+    private boolean collect(final String value, final Map<String, Object> targets) {
+        boolean known = true;
+        String working = value;
+        while (true) {
+            final Template template = this.resolver.template(working);
+            if (!template.hasTokens()) {
+                break;
+            }
+            final Template.Token[] tokens = template.tokens();
+            for (final Template.Token token : tokens) {
+                for (final Template.Alternative alternative : token.alternatives()) {
+                    if (alternative.isLiteral()) {
+                        break;
+                    }
+                    final String key = alternative.key();
+                    if (key.contains(PLACEHOLDER)) {
+                        known = false;
+                        break;
+                    }
+                    final Object target = PropertyNavigator.getProperty(this.root, key);
+                    if (target != null) {
+                        targets.put(key, target);
+                        break;
+                    }
+                    if (this.properties.get(key) != null) {
+                        break;
+                    }
+                }
+            }
+            final String[] placeholders = new String[tokens.length];
+            Arrays.fill(placeholders, PLACEHOLDER);
+            working = template.render(placeholders, this.resolver.startToken(), this.resolver.endToken());
+        }
+        return known;
+    }
+
+    /**
+     * Tarjan's strongly connected components, without recursion so that long chains of references can't overflow
+     * the stack. Components come out with everything they refer to already emitted, which is the resolution order.
+     */
+    private void sort() {
+        final int count = this.keys.size();
+        this.order = new int[count];
+        this.cyclic = new boolean[count];
+
+        final int[] index = new int[count];
+        final int[] low = new int[count];
+        final boolean[] onStack = new boolean[count];
+        final int[] stack = new int[count];
+        final int[] callNode = new int[count];
+        final int[] callEdge = new int[count];
+        Arrays.fill(index, -1);
+
+        int counter = 0;
+        int top = 0;
+        int emitted = 0;
+        for (int start = 0; start < count; start++) {
+            if (index[start] != -1) {
+                continue;
+            }
+            int depth = 0;
+            callNode[0] = start;
+            callEdge[0] = 0;
+            index[start] = low[start] = counter++;
+            stack[top++] = start;
+            onStack[start] = true;
+
+            while (depth >= 0) {
+                final int node = callNode[depth];
+                final int[] edges = this.references.get(node);
+                if (callEdge[depth] < edges.length) {
+                    final int next = edges[callEdge[depth]++];
+                    if (index[next] == -1) {
+                        index[next] = low[next] = counter++;
+                        stack[top++] = next;
+                        onStack[next] = true;
+                        depth++;
+                        callNode[depth] = next;
+                        callEdge[depth] = 0;
+                    } else if (onStack[next]) {
+                        low[node] = Math.min(low[node], index[next]);
+                    }
+                    continue;
+                }
+
+                if (low[node] == index[node]) {
+                    int first = top;
+                    do {
+                        first--;
+                        onStack[stack[first]] = false;
+                    } while (stack[first] != node);
+                    final int[] component = Arrays.copyOfRange(stack, first, top);
+                    top = first;
+
+                    boolean loop = component.length > 1;
+                    for (final int edge : edges) {
+                        loop |= edge == node;
+                    }
+                    if (loop) {
+                        this.cycles.add(this.cycle(component));
+                    }
+                    for (final int member : component) {
+                        boolean tainted = loop;
+                        for (final int edge : this.references.get(member)) {
+                            tainted |= this.cyclic[edge];
+                        }
+                        this.cyclic[member] = tainted;
+                        this.order[emitted++] = member;
+                    }
+                }
+
+                depth--;
+                if (depth >= 0) {
+                    final int parent = callNode[depth];
+                    low[parent] = Math.min(low[parent], low[node]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Find the shortest cycle through the first key (by name) of a cyclic component.
+     */
+    private List<String> cycle(final int[] component) {
+        final Set<Integer> members = new HashSet<>();
+        int start = component[0];
+        for (final int member : component) {
+            members.add(member);
+            if (this.keys.get(member).compareTo(this.keys.get(start)) < 0) {
+                start = member;
+            }
+        }
+
+        final Map<Integer, Integer> visited = new HashMap<>();
+        final Deque<Integer> queue = new ArrayDeque<>();
+        queue.add(start);
+        visited.put(start, -1);
+        int last = start;
+        search:
+        while (!queue.isEmpty()) {
+            final int node = queue.poll();
+            for (final int edge : this.references.get(node)) {
+                if (edge == start) {
+                    last = node;
+                    break search;
+                }
+                if (members.contains(edge) && !visited.containsKey(edge)) {
+                    visited.put(edge, node);
+                    queue.add(edge);
+                }
+            }
+        }
+
+        final List<String> path = new ArrayList<>();
+        path.add(this.keys.get(start));
+        for (int node = last; node != start; node = visited.get(node)) {
+            path.add(1, this.keys.get(node));
+        }
+        path.add(this.keys.get(start));
+        return path;
+    }
+
+    /**
+     * @return one cycle, as the path of keys that starts and ends with the same key, for each group of keys that refer to each other
+     */
+    public List<List<String>> getCycles() {
+        return Collections.unmodifiableList(this.cycles);
+    }
+
+    /**
+     * @return the keys whose values build keys from other tokens and so are looked up as they are resolved
+     */
+    public Set<String> getDynamicKeys() {
+        return Collections.unmodifiableSet(this.dynamic);
+    }
+
+    /**
+     * @param key a key in the graph
+     * @return the document keys that the value of the given key refers to directly
+     */
+    public Set<String> getReferences(final String key) {
+        final Integer id = this.ids.get(key);
+        if (id == null) {
+            return Collections.emptySet();
+        }
+        final Set<String> found = new LinkedHashSet<>();
+        for (final int edge : this.references.get(id)) {
+            found.add(this.keys.get(edge));
+        }
+        return found;
+    }
+
+    /**
+     * @return the keys in the graph with every key after all of the keys that it refers to
+     */
+    public List<String> getOrder() {
+        final List<String> ordered = new ArrayList<>(this.order.length);
+        for (final int id : this.order) {
+            ordered.add(this.keys.get(id));
+        }
+        return ordered;
+    }
+
+    /**
+     * Resolve every scalar in the document. Keys are resolved once each in topological order and each resolved value
+     * is used directly by the keys that refer to it. Keys on a cycle, or that refer to one, are resolved on their own
+     * the same way a single lookup would be.
+     *
+     * @return every scalar path in the document mapped to its resolved value, in document order
+     */
+    public Map<String, String> resolve() {
+        final String[] resolved = new String[this.keys.size()];
+        final Function<String, Object> document = this.document();
+        final Function<String, Object> settled = this.settled(resolved, document);
+        for (final int id : this.order) {
+            this.settle(id, resolved, document, settled);
+        }
+        return this.collect(resolved);
+    }
+
+    /**
+     * Resolve every scalar in the document like resolve() but on the given pool. The keys are split into levels
+     * where every key only refers to keys in earlier levels, so all of the keys in a level can be resolved at the
+     * same time and each resolved value is still shared with every key that refers to it.
+     *
+     * @param pool the pool to resolve on
+     * @return every scalar path in the document mapped to its resolved value, in document order
+     */
+    public Map<String, String> resolve(final ForkJoinPool pool) {
+        final String[] resolved = new String[this.keys.size()];
+        final Function<String, Object> document = this.document();
+        final Function<String, Object> settled = this.settled(resolved, document);
+        // each level is finished before the next starts, which also makes its values visible to the next level
+        for (final int[] level : this.levels()) {
+            pool.invoke(new Settle(level, 0, level.length, resolved, document, settled));
+        }
+        return this.collect(resolved);
+    }
+
+    /**
+     * Group the keys so that every key comes after all of the keys it refers to. Keys that are on a cycle, or that
+     * refer to one, are resolved against the document alone and so are in the first level.
+     */
+    private int[][] levels() {
+        final int[] level = new int[this.keys.size()];
+        int deepest = 0;
+        for (final int id : this.order) {
+            if (this.cyclic[id]) {
+                continue;
+            }
+            for (final int edge : this.references.get(id)) {
+                level[id] = Math.max(level[id], level[edge] + 1);
+            }
+            deepest = Math.max(deepest, level[id]);
+        }
+
+        final int[] sizes = new int[deepest + 1];
+        for (final int id : this.order) {
+            sizes[level[id]]++;
+        }
+        final int[][] levels = new int[deepest + 1][];
+        for (int i = 0; i < levels.length; i++) {
+            levels[i] = new int[sizes[i]];
+        }
+        final int[] filled = new int[deepest + 1];
+        for (final int id : this.order) {
+            levels[level[id]][filled[level[id]]++] = id;
+        }
+        return levels;
+    }
+
+    /**
+     * Settles a range of the keys of one level, splitting the range while it is large.
+     */
+    private final class Settle extends RecursiveAction {
+
+        private static final int THRESHOLD = 64;
+
+        private final int[] ids;
+        private final int from;
+        private final int to;
+        private final String[] resolved;
+        private final Function<String, Object> document;
+        private final Function<String, Object> settled;
+
+        private Settle(final int[] ids, final int from, final int to, final String[] resolved, final Function<String, Object> document, final Function<String, Object> settled) {
+            this.ids = ids;
+            this.from = from;
+            this.to = to;
+            this.resolved = resolved;
+            this.document = document;
+            this.settled = settled;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.to - this.from <= THRESHOLD) {
+                for (int i = this.from; i < this.to; i++) {
+                    ReferenceGraph.this.settle(this.ids[i], this.resolved, this.document, this.settled);
+                }
+                return;
+            }
+            final int middle = (this.from + this.to) >>> 1;
+            invokeAll(new Settle(this.ids, this.from, middle, this.resolved, this.document, this.settled),
+                      new Settle(this.ids, middle, this.to, this.resolved, this.document, this.settled));
+        }
+    }
+
+    private Function<String, Object> document() {
+        return key -> PropertyNavigator.getProperty(this.root, key);
+    }
+
+    // a key that isn't resolved yet (only possible for keys that are built from other tokens) is read from the document
+    private Function<String, Object> settled(final String[] resolved, final Function<String, Object> document) {
+        return key -> {
+            final Integer id = this.ids.get(key);
+            if (id != null && resolved[id] != null) {
+                return resolved[id];
+            }
+            return document.apply(key);
+        };
+    }
+
+    private void settle(final int id, final String[] resolved, final Function<String, Object> document, final Function<String, Object> settled) {
+        final Object value = this.values.get(id);
+        if (value != null) {
+            resolved[id] = this.settle(value.toString(), this.cyclic[id] ? document : settled);
+        }
+    }
+
+    private Map<String, String> collect(final String[] resolved) {
+        final Map<String, String> result = new LinkedHashMap<>();
+        for (final Map.Entry<String, Object> leaf : this.leaves.entrySet()) {
+            final Integer id = this.ids.get(leaf.getKey());
+            result.put(leaf.getKey(), id != null ? resolved[id] : leaf.getValue().toString());
+        }
+        return result;
+    }
+
+    private String settle(final String value, final Function<String, Object> lookup) {
+        String current = value;
+        String previous;
+        do {
+            previous = current;
+            current = this.resolver.resolve(previous, lookup, this.properties);
+        } while (!current.equals(previous));
+        return current;
+    }
+
+}
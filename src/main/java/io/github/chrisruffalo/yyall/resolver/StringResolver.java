@@ -28,4 +28,13 @@ public interface StringResolver {
      */
     default Map<String, String> defaultProperties() { return Collections.emptyMap(); }
 
+    /**
+     * Allows the resolver to tell callers that a string has nothing to resolve so that they can skip resolving
+     * it. By default every non-empty string is assumed to contain tokens.
+     *
+     * @param inputString the string to check
+     * @return false if resolving the string would not change it
+     */
+    default boolean containsTokens(final String inputString) { return inputString != null && !inputString.isEmpty(); }
+
 }
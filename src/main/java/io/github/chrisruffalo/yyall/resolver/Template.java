@@ -0,0 +1,297 @@
+package io.github.chrisruffalo.yyall.resolver;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * An immutable, pre-parsed form of a string that may contain tokens. A template is a sequence of literal
+ * chunks separated by token slots. Each distinct token is parsed once into its chain of fallback
+ * alternatives (keys and quoted literals) so that resolution only has to walk the parsed structure
+ * instead of scanning and splitting the string again.
+ *
+ * A template also keeps where every start and end token of the string is so that the resolver can resolve nested
+ * tokens in a single pass over those marks without looking for the tokens character by character again. The
+ * innermost tokens (the slots) are what the reference graph uses to find the references of a whole document.
+ */
+final class Template {
+
+    /**
+     * One option in a chain of fallbacks like "${ key | other.key | 'literal' }"
+     */
+    static final class Alternative {
+
+        private final String key;
+
+        private final String literal;
+
+        private Alternative(final String key, final String literal) {
+            this.key = key;
+            this.literal = literal;
+        }
+
+        /**
+         * @return the trimmed text of the alternative, used for lookups and as the guard value
+         */
+        String key() {
+            return this.key;
+        }
+
+        boolean isLiteral() {
+            return this.literal != null;
+        }
+
+        /**
+         * @return the text between the quotes of a literal alternative, null if not a literal
+         */
+        String literal() {
+            return this.literal;
+        }
+    }
+
+    /**
+     * A single distinct token found in the template.
+     */
+    static final class Token {
+
+        private final String text;
+
+        private final Alternative[] alternatives;
+
+        private Token(final String text, final Alternative[] alternatives) {
+            this.text = text;
+            this.alternatives = alternatives;
+        }
+
+        /**
+         * @return the text between the start and end tokens
+         */
+        String text() {
+            return this.text;
+        }
+
+        Alternative[] alternatives() {
+            return this.alternatives;
+        }
+    }
+
+    private static final Token[] NO_TOKENS = new Token[0];
+
+    private static final int[] NO_SLOTS = new int[0];
+
+    private final String source;
+
+    // literal chunks, always one more than there are slots
+    private final String[] literals;
+
+    // each slot points at an entry in the distinct token array
+    private final int[] slots;
+
+    // distinct tokens in order of first appearance
+    private final Token[] tokens;
+
+    // the position of every start token and the complement (~position) of every end token, in order
+    private final int[] marks;
+
+    private Template(final String source, final String[] literals, final int[] slots, final Token[] tokens, final int[] marks) {
+        this.source = source;
+        this.literals = literals;
+        this.slots = slots;
+        this.tokens = tokens;
+        this.marks = marks;
+    }
+
+    /**
+     * Create a template for a string that contains no tokens at all.
+     *
+     * @param source the string
+     * @return a template that renders to the given string
+     */
+    static Template literal(final String source) {
+        return new Template(source, new String[]{source}, NO_SLOTS, NO_TOKENS, NO_SLOTS);
+    }
+
+    /**
+     * Parse the given string in a single pass. A token is the start token followed by one or more characters
+     * that are not part of either the start or end token and then the end token.
+     *
+     * @param input the string to parse
+     * @param startToken the token that opens a replacement
+     * @param endToken the token that closes a replacement
+     * @param pipeToken the characters that separate alternatives
+     * @param quotes the characters that can quote a literal alternative
+     * @return the parsed template
+     */
+    static Template compile(final String input, final String startToken, final String endToken, final String pipeToken, final String quotes) {
+        if (input == null || input.isEmpty() || startToken.isEmpty() || endToken.isEmpty()) {
+            return literal(input);
+        }
+
+        final String excluded = startToken + endToken;
+        final List<String> literals = new ArrayList<>();
+        final List<Integer> slots = new ArrayList<>();
+        final Map<String, Integer> distinct = new LinkedHashMap<>();
+
+        int literalStart = 0;
+        int from = 0;
+        int start;
+        while ((start = input.indexOf(startToken, from)) >= 0) {
+            final int textStart = start + startToken.length();
+            int textEnd = textStart;
+            while (textEnd < input.length() && excluded.indexOf(input.charAt(textEnd)) < 0) {
+                textEnd++;
+            }
+
+            // not a token, try again from the next character
+            if (textEnd == textStart || !input.startsWith(endToken, textEnd)) {
+                from = start + 1;
+                continue;
+            }
+
+            final String text = input.substring(textStart, textEnd);
+            Integer index = distinct.get(text);
+            if (index == null) {
+                index = distinct.size();
+                distinct.put(text, index);
+            }
+            literals.add(input.substring(literalStart, start));
+            slots.add(index);
+
+            literalStart = textEnd + endToken.length();
+            from = literalStart;
+        }
+
+        if (slots.isEmpty()) {
+            return literal(input);
+        }
+        literals.add(input.substring(literalStart));
+
+        final Token[] tokens = new Token[distinct.size()];
+        distinct.forEach((text, index) -> tokens[index] = new Token(text, alternatives(text, pipeToken, quotes)));
+
+        final int[] slotArray = new int[slots.size()];
+        for (int i = 0; i < slotArray.length; i++) {
+            slotArray[i] = slots.get(i);
+        }
+
+        return new Template(input, literals.toArray(new String[0]), slotArray, tokens, marks(input, startToken, endToken));
+    }
+
+    /**
+     * Find the start and end tokens the way the resolver reads them: an end token only counts while a start token is
+     * open and it is checked before the start token so that a start token that is the same as the end token closes.
+     */
+    private static int[] marks(final String input, final String startToken, final String endToken) {
+        int[] marks = new int[8];
+        int count = 0;
+        int depth = 0;
+        int index = 0;
+        while (index < input.length()) {
+            final int mark;
+            if (depth > 0 && input.startsWith(endToken, index)) {
+                depth--;
+                mark = ~index;
+                index += endToken.length();
+            } else if (input.startsWith(startToken, index)) {
+                depth++;
+                mark = index;
+                index += startToken.length();
+            } else {
+                index++;
+                continue;
+            }
+            if (count == marks.length) {
+                marks = Arrays.copyOf(marks, count * 2);
+            }
+            marks[count++] = mark;
+        }
+        return Arrays.copyOf(marks, count);
+    }
+
+    /**
+     * Split the text of a token into its alternatives.
+     *
+     * @param text the text between the start and end token
+     * @param pipeToken the characters that separate alternatives
+     * @param quotes the characters that can quote a literal alternative
+     * @return the alternatives, in order
+     */
+    static Alternative[] alternatives(final String text, final String pipeToken, final String quotes) {
+        final List<Alternative> alternatives = new ArrayList<>();
+        for (final String part : StringUtils.split(text, pipeToken)) {
+            final String key = part.trim();
+            if (key.isEmpty()) {
+                continue;
+            }
+            final char first = key.charAt(0);
+            if (key.length() > 1 && first == key.charAt(key.length() - 1) && quotes.indexOf(first) >= 0) {
+                alternatives.add(new Alternative(key, key.substring(1, key.length() - 1)));
+            } else {
+                alternatives.add(new Alternative(key, null));
+            }
+        }
+        return alternatives.toArray(new Alternative[0]);
+    }
+
+    String source() {
+        return this.source;
+    }
+
+    boolean hasTokens() {
+        return this.tokens.length > 0;
+    }
+
+    /**
+     * @return the position of every start token and the complement (~position) of every end token in the order that
+     *         they appear, shared and must not be modified
+     */
+    int[] marks() {
+        return this.marks;
+    }
+
+    /**
+     * @return the distinct tokens in the order that they first appear, shared and must not be modified
+     */
+    Token[] tokens() {
+        return this.tokens;
+    }
+
+    /**
+     * Render the template with the given replacements. The replacement array is parallel to the distinct
+     * token array. Tokens without a replacement (null) are rendered as they were in the source.
+     *
+     * @param replacements resolved values for the distinct tokens
+     * @param startToken the token that opens a replacement
+     * @param endToken the token that closes a replacement
+     * @return the rendered string, the source string itself if nothing was replaced
+     */
+    String render(final String[] replacements, final String startToken, final String endToken) {
+        boolean replaced = false;
+        for (final String replacement : replacements) {
+            if (replacement != null) {
+                replaced = true;
+                break;
+            }
+        }
+        if (!replaced) {
+            return this.source;
+        }
+
+        final StringBuilder builder = new StringBuilder(this.source.length());
+        for (int i = 0; i < this.slots.length; i++) {
+            builder.append(this.literals[i]);
+            final String replacement = replacements[this.slots[i]];
+            if (replacement != null) {
+                builder.append(replacement);
+            } else {
+                builder.append(startToken).append(this.tokens[this.slots[i]].text).append(endToken);
+            }
+        }
+        builder.append(this.literals[this.slots.length]);
+        return builder.toString();
+    }
+}
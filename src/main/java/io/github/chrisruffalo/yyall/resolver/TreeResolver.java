@@ -0,0 +1,126 @@
+package io.github.chrisruffalo.yyall.resolver;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Resolves every string in a loaded yaml tree of maps, lists, and scalars without turning the tree into text first.
+ * Only strings that contain tokens are resolved and only the maps and lists on the path to a string that changed
+ * are copied. Everything else in the resolved tree is shared with the original tree so the copies are made
+ * unmodifiable as well: given a frozen tree (like the tree of a configuration) the whole resolved tree can't be
+ * changed, no matter which parts of it had tokens.
+ */
+public class TreeResolver {
+
+    private final Predicate<String> needsResolution;
+
+    private final Function<String, ?> resolution;
+
+    /**
+     * @param needsResolution decides if a string needs to be resolved at all
+     * @param resolution resolves a single string, the result can be given a type other than string
+     */
+    public TreeResolver(final Predicate<String> needsResolution, final Function<String, ?> resolution) {
+        this.needsResolution = needsResolution;
+        this.resolution = resolution;
+    }
+
+    /**
+     * Resolve the given tree.
+     *
+     * @param root the root of the tree
+     * @return the resolved tree, the root itself if nothing in it needed to be resolved
+     */
+    public Object resolve(final Object root) {
+        // containers that have been resolved (or are being resolved) keyed by identity so that
+        // aliased subtrees are only resolved once and self references don't recurse forever
+        return this.resolve(root, new IdentityHashMap<>());
+    }
+
+    private Object resolve(final Object node, final Map<Object, Object> resolved) {
+        if (node instanceof String) {
+            return this.resolveString((String) node);
+        }
+        if (!(node instanceof Map) && !(node instanceof List)) {
+            return node;
+        }
+
+        final Object previous = resolved.get(node);
+        if (previous != null) {
+            return previous;
+        }
+        // until it is done a container resolves to itself
+        resolved.put(node, node);
+
+        final Object result;
+        if (node instanceof Map) {
+            result = this.resolveMap((Map<?, ?>) node, resolved);
+        } else {
+            result = this.resolveList((List<?>) node, resolved);
+        }
+        resolved.put(node, result);
+        return result;
+    }
+
+    private Object resolveString(final String value) {
+        if (!this.needsResolution.test(value)) {
+            return value;
+        }
+        final Object resolvedValue = this.resolution.apply(value);
+        // keep the original instance when nothing changed so that the parent doesn't need to be copied
+        return value.equals(resolvedValue) ? value : resolvedValue;
+    }
+
+    private Object resolveMap(final Map<?, ?> map, final Map<Object, Object> resolved) {
+        Map<Object, Object> copy = null;
+        int index = 0;
+        for (final Map.Entry<?, ?> entry : map.entrySet()) {
+            final Object key = entry.getKey();
+            final Object value = entry.getValue();
+            final Object resolvedKey = key instanceof String ? this.resolveString((String) key) : key;
+            final Object resolvedValue = this.resolve(value, resolved);
+
+            // copy the (unchanged) entries that came before the first change
+            if (copy == null && (resolvedKey != key || resolvedValue != value)) {
+                copy = new LinkedHashMap<>(Math.max(16, (int) (map.size() / 0.75f) + 1));
+                final Iterator<? extends Map.Entry<?, ?>> previous = map.entrySet().iterator();
+                for (int i = 0; i < index; i++) {
+                    final Map.Entry<?, ?> previousEntry = previous.next();
+                    copy.put(previousEntry.getKey(), previousEntry.getValue());
+                }
+            }
+            if (copy != null) {
+                copy.put(resolvedKey, resolvedValue);
+            }
+            index++;
+        }
+        return copy == null ? map : Collections.unmodifiableMap(copy);
+    }
+
+    private Object resolveList(final List<?> list, final Map<Object, Object> resolved) {
+        List<Object> copy = null;
+        int index = 0;
+        for (final Object value : list) {
+            final Object resolvedValue = this.resolve(value, resolved);
+            if (copy == null && resolvedValue != value) {
+                copy = new ArrayList<>(list.size());
+                final Iterator<?> previous = list.iterator();
+                for (int i = 0; i < index; i++) {
+                    copy.add(previous.next());
+                }
+            }
+            if (copy != null) {
+                copy.add(resolvedValue);
+            }
+            index++;
+        }
+        return copy == null ? list : Collections.unmodifiableList(copy);
+    }
+}
@@ -0,0 +1,68 @@
+package io.github.chrisruffalo.yyall.yaml;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.yaml.snakeyaml.DumperOptions;
+import org.yaml.snakeyaml.constructor.Constructor;
+import org.yaml.snakeyaml.introspector.PropertyUtils;
+import org.yaml.snakeyaml.nodes.Node;
+import org.yaml.snakeyaml.nodes.NodeId;
+import org.yaml.snakeyaml.nodes.ScalarNode;
+import org.yaml.snakeyaml.nodes.Tag;
+import org.yaml.snakeyaml.resolver.Resolver;
+
+/**
+ * Constructs java objects directly from a node graph, usually one produced by a Representer, so that an
+ * object tree can be bound to a class without being written out to text and parsed again.
+ */
+public class BindingConstructor extends Constructor {
+
+    private static final Resolver RESOLVER = new Resolver();
+
+    // the implicit types that a plain scalar can have, anything else (like merge keys) is left as a string
+    private static final Set<Tag> IMPLICIT = new HashSet<>(Arrays.asList(Tag.BOOL, Tag.INT, Tag.FLOAT, Tag.NULL, Tag.TIMESTAMP));
+
+    public BindingConstructor(final PropertyUtils propertyUtils) {
+        super();
+        this.setPropertyUtils(propertyUtils);
+    }
+
+    /**
+     * Construct an instance of the given type from the node. This follows the same rules as loading a single
+     * document with a root type.
+     *
+     * @param node the root node
+     * @param type the type to bind the root node to
+     * @param <T> the type of the result
+     * @return the constructed object, null if the node is null or represents null
+     */
+    public <T> T bind(final Node node, final Class<T> type) {
+        if (node == null || Tag.NULL.equals(node.getTag())) {
+            return null;
+        }
+        if (Object.class != type) {
+            node.setTag(new Tag(type));
+        }
+        return type.cast(this.constructDocument(node));
+    }
+
+    /**
+     * Construct a string the way loading it as a plain scalar would, so "8080" becomes an Integer and "true" becomes
+     * a Boolean. Strings that don't look like a number, boolean, null, or timestamp are returned as they are.
+     *
+     * @param text the string
+     * @return the typed value
+     */
+    public Object implicit(final String text) {
+        if (text == null) {
+            return null;
+        }
+        final Tag tag = RESOLVER.resolve(NodeId.scalar, text, true);
+        if (!IMPLICIT.contains(tag)) {
+            return text;
+        }
+        return this.yamlConstructors.get(tag).construct(new ScalarNode(tag, text, null, null, DumperOptions.ScalarStyle.PLAIN));
+    }
+}
@@ -0,0 +1,120 @@
+package io.github.chrisruffalo.yyall.yaml;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.Iterator;
+
+import org.yaml.snakeyaml.DumperOptions;
+import org.yaml.snakeyaml.emitter.Emitter;
+import org.yaml.snakeyaml.events.Event;
+
+/**
+ * Reads the YAML text of a series of serialization events. Events are only emitted when the reader needs more bytes
+ * so at most a buffer's worth of text (or one long scalar) is held at a time.
+ */
+public final class EventInputStream extends InputStream {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final Iterator<Event> events;
+    private final Emitter emitter;
+    private final CharsetEncoder encoder;
+
+    // text from the emitter that has not been encoded yet
+    private final StringBuilder chars = new StringBuilder(BUFFER_SIZE);
+
+    // encoded bytes that have not been read yet
+    private final ByteBuffer bytes = ByteBuffer.allocate(BUFFER_SIZE);
+
+    private boolean finished = false;
+
+    /**
+     * @param events the events to emit
+     * @param options the options for the emitter
+     * @param charset the charset to encode the text with
+     */
+    public EventInputStream(final Iterator<Event> events, final DumperOptions options, final Charset charset) {
+        this.events = events;
+        this.emitter = new Emitter(new Writer() {
+            @Override
+            public void write(final char[] buffer, final int offset, final int length) {
+                EventInputStream.this.chars.append(buffer, offset, length);
+            }
+
+            @Override
+            public void write(final String string) {
+                EventInputStream.this.chars.append(string);
+            }
+
+            @Override
+            public void flush() {
+
+            }
+
+            @Override
+            public void close() {
+
+            }
+        }, options);
+        this.encoder = charset.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.bytes.flip();
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!this.bytes.hasRemaining() && !this.fill()) {
+            return -1;
+        }
+        return this.bytes.get() & 0xFF;
+    }
+
+    @Override
+    public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (!this.bytes.hasRemaining() && !this.fill()) {
+            return -1;
+        }
+        final int count = Math.min(length, this.bytes.remaining());
+        this.bytes.get(buffer, offset, count);
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return this.bytes.remaining();
+    }
+
+    private boolean fill() throws IOException {
+        this.bytes.clear();
+        while (this.bytes.position() == 0 && !this.finished) {
+            final boolean more = this.events.hasNext();
+            if (more && this.chars.length() < BUFFER_SIZE) {
+                this.emitter.emit(this.events.next());
+                continue;
+            }
+            final CharBuffer input = CharBuffer.wrap(this.chars);
+            CoderResult result = this.encoder.encode(input, this.bytes, !more);
+            this.chars.delete(0, input.position());
+            if (result.isError()) {
+                result.throwException();
+            }
+            if (!more && result.isUnderflow()) {
+                result = this.encoder.flush(this.bytes);
+                this.finished = result.isUnderflow();
+            }
+        }
+        this.bytes.flip();
+        return this.bytes.hasRemaining();
+    }
+}
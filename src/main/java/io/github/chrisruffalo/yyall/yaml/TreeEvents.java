@@ -0,0 +1,263 @@
+package io.github.chrisruffalo.yyall.yaml;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import io.github.chrisruffalo.yyall.exception.YyallRuntimeException;
+import org.yaml.snakeyaml.DumperOptions;
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.events.AliasEvent;
+import org.yaml.snakeyaml.events.DocumentEndEvent;
+import org.yaml.snakeyaml.events.DocumentStartEvent;
+import org.yaml.snakeyaml.events.Event;
+import org.yaml.snakeyaml.events.ImplicitTuple;
+import org.yaml.snakeyaml.events.MappingEndEvent;
+import org.yaml.snakeyaml.events.MappingStartEvent;
+import org.yaml.snakeyaml.events.ScalarEvent;
+import org.yaml.snakeyaml.events.SequenceEndEvent;
+import org.yaml.snakeyaml.events.SequenceStartEvent;
+import org.yaml.snakeyaml.events.StreamEndEvent;
+import org.yaml.snakeyaml.events.StreamStartEvent;
+import org.yaml.snakeyaml.nodes.MappingNode;
+import org.yaml.snakeyaml.nodes.Node;
+import org.yaml.snakeyaml.nodes.NodeId;
+import org.yaml.snakeyaml.nodes.NodeTuple;
+import org.yaml.snakeyaml.nodes.ScalarNode;
+import org.yaml.snakeyaml.nodes.SequenceNode;
+import org.yaml.snakeyaml.nodes.Tag;
+import org.yaml.snakeyaml.resolver.Resolver;
+
+/**
+ * The serialization events for a loaded tree, generated as they are asked for so that the tree can be written out
+ * without first building a resolved copy of it or its text. Strings that need it are resolved as they are reached
+ * and only the path from the root to the current node is held, so memory use depends on the depth of the document
+ * and not its size.
+ *
+ * Maps and lists are walked directly and every other value is represented the same way that dumping would represent
+ * it. Like dumping, maps and lists that appear more than once in the tree (including ones that contain themselves)
+ * are written out once with an anchor and then as aliases. Finding those takes one walk over the tree before the
+ * first event, which keeps a set of the maps and lists in the tree but not of their values.
+ */
+public final class TreeEvents implements Iterator<Event> {
+
+    private static final Resolver RESOLVER = new Resolver();
+
+    private static final Tag MAP_TAG = RESOLVER.resolve(NodeId.mapping, null, true);
+    private static final Tag SEQUENCE_TAG = RESOLVER.resolve(NodeId.sequence, null, true);
+
+    /**
+     * The children of a collection that has been opened, map entries are given as the key and then the value.
+     */
+    private static final class Frame {
+        private final Iterator<?> children;
+        private final boolean mapping;
+        private final boolean nodes;
+        private Object value;
+
+        private Frame(final Iterator<?> children, final boolean mapping, final boolean nodes) {
+            this.children = children;
+            this.mapping = mapping;
+            this.nodes = nodes;
+        }
+
+        private boolean hasNext() {
+            return this.value != null || this.children.hasNext();
+        }
+
+        private Object next() {
+            if (this.value != null) {
+                final Object next = this.value;
+                this.value = null;
+                return next;
+            }
+            final Object child = this.children.next();
+            if (this.nodes && this.mapping) {
+                final NodeTuple tuple = (NodeTuple) child;
+                this.value = tuple.getValueNode();
+                return tuple.getKeyNode();
+            }
+            if (this.mapping) {
+                final Map.Entry<?, ?> entry = (Map.Entry<?, ?>) child;
+                this.value = new Item(entry.getValue());
+                return new Item(entry.getKey());
+            }
+            return this.nodes ? child : new Item(child);
+        }
+    }
+
+    /**
+     * Wraps tree values so that nulls can be told apart from the end of a frame.
+     */
+    private static final class Item {
+        private final Object value;
+
+        private Item(final Object value) {
+            this.value = value;
+        }
+    }
+
+    private enum State {
+        STREAM_START, DOCUMENT_START, ROOT, CONTENT, STREAM_END, DONE
+    }
+
+    private final Object root;
+    private final Yaml yaml;
+    private final Predicate<String> needsResolution;
+    private final Function<String, ?> resolution;
+
+    private final Deque<Frame> frames = new ArrayDeque<>();
+    private State state = State.STREAM_START;
+
+    // anchors for the maps and lists that appear more than once and the ones of those that have been written
+    private Map<Object, String> anchors;
+    private Set<Object> anchored;
+
+    /**
+     * @param root the tree to generate events for
+     * @param yaml used to represent values that are not maps or lists
+     * @param needsResolution true for strings that need to be resolved
+     * @param resolution resolves a string, the result is represented by its own type so it can be something else
+     */
+    public TreeEvents(final Object root, final Yaml yaml, final Predicate<String> needsResolution, final Function<String, ?> resolution) {
+        this.root = root;
+        this.yaml = yaml;
+        this.needsResolution = needsResolution;
+        this.resolution = resolution;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return this.state != State.DONE;
+    }
+
+    @Override
+    public Event next() {
+        switch (this.state) {
+            case STREAM_START:
+                this.state = State.DOCUMENT_START;
+                return new StreamStartEvent(null, null);
+            case DOCUMENT_START:
+                this.state = State.ROOT;
+                return new DocumentStartEvent(null, null, false, null, null);
+            case ROOT:
+                this.state = State.CONTENT;
+                this.anchors = anchors(this.root);
+                this.anchored = Collections.newSetFromMap(new IdentityHashMap<>());
+                return this.open(new Item(this.root));
+            case CONTENT:
+                final Frame frame = this.frames.peek();
+                if (frame == null) {
+                    this.state = State.STREAM_END;
+                    return new DocumentEndEvent(null, null, false);
+                }
+                if (frame.hasNext()) {
+                    return this.open(frame.next());
+                }
+                this.frames.pop();
+                return frame.mapping ? new MappingEndEvent(null, null) : new SequenceEndEvent(null, null);
+            case STREAM_END:
+                this.state = State.DONE;
+                return new StreamEndEvent(null, null);
+            default:
+                throw new NoSuchElementException();
+        }
+    }
+
+    private Event open(final Object child) {
+        if (child instanceof Node) {
+            return this.open((Node) child);
+        }
+        Object value = ((Item) child).value;
+        if (value instanceof Map || value instanceof List) {
+            final String anchor = this.anchors.get(value);
+            if (anchor != null && !this.anchored.add(value)) {
+                return new AliasEvent(anchor, null, null);
+            }
+            this.frames.push(frame(value));
+            if (value instanceof Map) {
+                return new MappingStartEvent(anchor, MAP_TAG.getValue(), true, null, null, DumperOptions.FlowStyle.BLOCK);
+            }
+            return new SequenceStartEvent(anchor, SEQUENCE_TAG.getValue(), true, null, null, DumperOptions.FlowStyle.BLOCK);
+        }
+        if (value instanceof String && this.needsResolution.test((String) value)) {
+            value = this.resolution.apply((String) value);
+        }
+        return this.open(this.yaml.represent(value));
+    }
+
+    private static Frame frame(final Object container) {
+        if (container instanceof Map) {
+            return new Frame(((Map<?, ?>) container).entrySet().iterator(), true, false);
+        }
+        return new Frame(((List<?>) container).iterator(), false, false);
+    }
+
+    /**
+     * Find the maps and lists that appear more than once. Like the serializer, anchors are named in the order that
+     * the second appearance of each is found, walking the tree in the order it is written.
+     */
+    private static Map<Object, String> anchors(final Object root) {
+        final Map<Object, String> anchors = new IdentityHashMap<>();
+        if (!(root instanceof Map) && !(root instanceof List)) {
+            return anchors;
+        }
+        final Set<Object> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        final Deque<Frame> walk = new ArrayDeque<>();
+        seen.add(root);
+        walk.push(frame(root));
+        while (!walk.isEmpty()) {
+            final Frame frame = walk.peek();
+            if (!frame.hasNext()) {
+                walk.pop();
+                continue;
+            }
+            final Object value = ((Item) frame.next()).value;
+            if (!(value instanceof Map) && !(value instanceof List)) {
+                continue;
+            }
+            if (seen.add(value)) {
+                walk.push(frame(value));
+            } else if (!anchors.containsKey(value)) {
+                anchors.put(value, String.format("id%03d", anchors.size() + 1));
+            }
+        }
+        return anchors;
+    }
+
+    /**
+     * Opens a represented node the same way that the serializer would.
+     */
+    private Event open(final Node node) {
+        final Tag tag = node.getTag();
+        if (node instanceof ScalarNode) {
+            final ScalarNode scalar = (ScalarNode) node;
+            final ImplicitTuple implicit = new ImplicitTuple(
+                tag.equals(RESOLVER.resolve(NodeId.scalar, scalar.getValue(), true)),
+                tag.equals(RESOLVER.resolve(NodeId.scalar, scalar.getValue(), false))
+            );
+            return new ScalarEvent(null, tag.getValue(), implicit, scalar.getValue(), null, null, scalar.getScalarStyle());
+        }
+        if (node instanceof SequenceNode) {
+            final SequenceNode sequence = (SequenceNode) node;
+            this.frames.push(new Frame(sequence.getValue().iterator(), false, true));
+            return new SequenceStartEvent(null, tag.getValue(), tag.equals(SEQUENCE_TAG), null, null, sequence.getFlowStyle());
+        }
+        if (node instanceof MappingNode) {
+            final MappingNode mapping = (MappingNode) node;
+            this.frames.push(new Frame(mapping.getValue().iterator(), true, true));
+            return new MappingStartEvent(null, tag.getValue(), tag.equals(MAP_TAG), null, null, mapping.getFlowStyle());
+        }
+        // anchors are not used so an alias can only show up in a represented value that refers to itself
+        throw new YyallRuntimeException("Can't write a value that refers to itself: " + tag.getValue());
+    }
+
+}
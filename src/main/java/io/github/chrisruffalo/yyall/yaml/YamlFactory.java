@@ -0,0 +1,73 @@
+package io.github.chrisruffalo.yyall.yaml;
+
+import org.yaml.snakeyaml.DumperOptions;
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.introspector.PropertyUtils;
+import org.yaml.snakeyaml.representer.Representer;
+
+/**
+ * SnakeYAML loaders, representers, and constructors keep state while they work (and property utils cache
+ * introspection results in plain maps) so none of them can be shared between threads. Each thread instead gets its
+ * own configured set that it reuses for every load, represent, and bind, which lets configurations be loaded and
+ * resolved on many threads at once without any locking. Only the dumper options, which are never changed after they
+ * are created, are shared.
+ */
+public final class YamlFactory {
+
+    private static final DumperOptions DUMPER_OPTIONS = createDumperOptions();
+
+    private static final ThreadLocal<YamlFactory> LOCAL = ThreadLocal.withInitial(YamlFactory::new);
+
+    private final PropertyUtils propertyUtils;
+
+    private final Yaml yaml;
+
+    private final BindingConstructor binder;
+
+    private YamlFactory() {
+        this.propertyUtils = new PropertyUtils();
+        this.propertyUtils.setSkipMissingProperties(true);
+
+        final Representer representer = new Representer();
+        representer.setPropertyUtils(this.propertyUtils);
+        this.yaml = new Yaml(representer, DUMPER_OPTIONS);
+
+        this.binder = new BindingConstructor(this.propertyUtils);
+    }
+
+    /**
+     * @return the instances for the calling thread, which must not be handed to other threads
+     */
+    public static YamlFactory local() {
+        return LOCAL.get();
+    }
+
+    /**
+     * @return new instances that are not shared with any thread, for work that isn't done on the calling thread
+     */
+    public static YamlFactory create() {
+        return new YamlFactory();
+    }
+
+    /**
+     * @return the options used for all YAML output, shared and not to be changed
+     */
+    public static DumperOptions dumperOptions() {
+        return DUMPER_OPTIONS;
+    }
+
+    public Yaml yaml() {
+        return this.yaml;
+    }
+
+    public BindingConstructor binder() {
+        return this.binder;
+    }
+
+    private static DumperOptions createDumperOptions() {
+        final DumperOptions dumperOptions = new DumperOptions();
+        dumperOptions.setDefaultFlowStyle(DumperOptions.FlowStyle.BLOCK);
+        dumperOptions.setPrettyFlow(true);
+        return dumperOptions;
+    }
+}
@@ -1,11 +1,40 @@
 package io.github.chrisruffalo.yyall;
 
+import io.github.chrisruffalo.yyall.exception.ReferenceCycleException;
+import io.github.chrisruffalo.yyall.exception.YyallRuntimeException;
 import io.github.chrisruffalo.yyall.model.Root;
+import io.github.chrisruffalo.yyall.properties.AsyncPropertySource;
+import io.github.chrisruffalo.yyall.properties.PropertySource;
+import io.github.chrisruffalo.yyall.resolver.ReferenceGraph;
 import org.junit.Assert;
 import org.junit.Test;
+import org.yaml.snakeyaml.DumperOptions;
+import org.yaml.snakeyaml.Yaml;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.nio.file.Paths;
+import java.time.Duration;
 
 public class YyallConfigurationTest {
 
@@ -15,6 +44,13 @@ public class YyallConfigurationTest {
         Assert.assertEquals("Path is correct", "/storage/.storage/", conf.get("app.storage.path"));
     }
 
+    @Test
+    public void testLoadFromPath() throws URISyntaxException {
+        final String path = Paths.get(this.getClass().getResource("/featuretest.yml").toURI()).toString();
+        final YyallConfiguration conf = YyallConfiguration.load(path);
+        Assert.assertEquals("Path is correct", "/storage/.storage/", conf.get("app.storage.path"));
+    }
+
     @Test
     public void testFormat() {
         final YyallConfiguration conf = YyallConfiguration.load(this.getClass().getResourceAsStream("/featuretest.yml"));
@@ -54,11 +90,51 @@ public class YyallConfigurationTest {
         Assert.assertEquals("Format works on non-variable stream", conf.format("${reference.home}"), conf3.format("${reference.home}"));
     }
 
+    @Test
+    public void testResolveToOutput() throws IOException {
+        final YyallConfiguration conf = YyallConfiguration.load(this.getClass().getResourceAsStream("/featuretest.yml"));
+        conf.put("unicode", "h\u00e9llo \u2713 \ud834\udd1e ${vars.user}");
+        final String expected = conf.resolveString();
+        Assert.assertTrue(expected.contains("h\u00e9llo \u2713 \ud834\udd1e batman"));
+
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        conf.resolveTo(output);
+        Assert.assertEquals(expected, new String(output.toByteArray(), StandardCharsets.UTF_8));
+
+        final ByteArrayOutputStream channelOutput = new ByteArrayOutputStream();
+        conf.resolveTo(Channels.newChannel(channelOutput), StandardCharsets.UTF_16);
+        Assert.assertEquals(expected, new String(channelOutput.toByteArray(), StandardCharsets.UTF_16));
+
+        // read in small pieces so that multi-byte characters are split between reads
+        final ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+        try (final InputStream resolvedStream = conf.resolveStream()) {
+            final byte[] buffer = new byte[7];
+            int read;
+            while ((read = resolvedStream.read(buffer)) != -1) {
+                streamed.write(buffer, 0, read);
+            }
+        }
+        Assert.assertEquals(expected, new String(streamed.toByteArray(), StandardCharsets.UTF_8));
+    }
+
     @Test
     public void testResolveNested() {
         final YyallConfiguration conf = YyallConfiguration.load(this.getClass().getResourceAsStream("/featuretest.yml"));
         Assert.assertEquals("Nested literal and variable are resolved correctly", "http://localhost:8080/api", conf.format("${ given.host | 'http://localhost:${vars.port | '9090'}/api'}"));
         Assert.assertEquals("Listed variables are resolved correctly", "robin", conf.format("${ vars.pass }"));
+        Assert.assertEquals("Missing index falls back", "unknown", conf.format("${ vars.list[25] | 'unknown' }"));
+    }
+
+    @Test
+    public void testMissingIndex() {
+        final YyallConfiguration conf = YyallConfiguration.load(this.getClass().getResourceAsStream("/featuretest.yml"));
+        // an index past the end of a list is a miss like a missing key and not an error
+        Assert.assertNull(conf.get("vars.list[25]"));
+        Assert.assertFalse(conf.has("vars.list[25]"));
+        Assert.assertEquals("${vars.list[25]}", conf.format("${vars.list[25]}"));
+        Assert.assertEquals("${vars.list[6][25]}", conf.format("${vars.list[6][25]}"));
+        // and the key is looked up in the property sources instead
+        Assert.assertEquals("from properties", conf.format("${vars.list[25]}", Collections.singletonMap("vars.list[25]", "from properties")));
     }
 
     @Test
@@ -115,4 +191,763 @@ public class YyallConfigurationTest {
         Assert.assertEquals(System.getProperty("user.home") == null ? "nohome" : System.getProperty("user.home"), conf.get("multi.home"));
         Assert.assertEquals("nohome", conf.withoutEnvironmentVariables().withoutSystemProperties().get("multi.home"));
     }
+
+    @Test
+    public void testCachedGet() {
+        final YyallConfiguration conf = YyallConfiguration.load(this.getClass().getResourceAsStream("/featuretest.yml")).withCache(16);
+        Assert.assertEquals("value", conf.get("cyclic.d"));
+        Assert.assertEquals("Cached value is the same", "value", conf.get("cyclic.d"));
+        Assert.assertEquals("${cyclic.b}", conf.get("cyclic.a"));
+
+        // changing the configuration drops the cached values
+        Assert.assertTrue(conf.put("cyclic.c", "changed"));
+        Assert.assertEquals("changed", conf.get("cyclic.d"));
+
+        // copies keep caching and see changes made through the shared root
+        final YyallConfiguration copy = conf.withoutSystemProperties();
+        Assert.assertEquals("changed", copy.get("cyclic.d"));
+        Assert.assertTrue(conf.put("cyclic.c", "again"));
+        Assert.assertEquals("again", copy.get("cyclic.d"));
+    }
+
+    @Test
+    public void testVersionedPropertySource() {
+        final Map<String, String> properties = new HashMap<>();
+        properties.put("custom.versioned.property", "first");
+        final AtomicLong version = new AtomicLong();
+        final PropertySource source = new PropertySource() {
+            @Override
+            public Map<String, String> getProperties() {
+                return properties;
+            }
+
+            @Override
+            public long version() {
+                return version.get();
+            }
+        };
+
+        final YyallConfiguration conf = YyallConfiguration.load(this.getClass().getResourceAsStream("/featuretest.yml")).withProperties(source);
+        Assert.assertEquals("first", conf.format("${custom.versioned.property}"));
+
+        // a change that is not reported is not seen until the configuration is refreshed
+        properties.put("custom.versioned.property", "second");
+        Assert.assertEquals("first", conf.format("${custom.versioned.property}"));
+        conf.refresh();
+        Assert.assertEquals("second", conf.format("${custom.versioned.property}"));
+
+        // a reported change is seen right away
+        properties.put("custom.versioned.property", "third");
+        version.incrementAndGet();
+        Assert.assertEquals("third", conf.format("${custom.versioned.property}"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testResolveTree() {
+        final String yaml = "a:\n  b: plain\n  c: ${custom.tree.value}\nd:\n  e: untouched\n";
+        final Map<String, String> properties = new HashMap<>();
+        properties.put("custom.tree.value", "value: with: 'yaml' # characters");
+        final YyallConfiguration conf = YyallConfiguration.load(new ByteArrayInputStream(yaml.getBytes())).withProperties(() -> properties);
+
+        final Map<String, Object> first = (Map<String, Object>) conf.resolve();
+        final Map<String, Object> second = (Map<String, Object>) conf.resolve();
+        Assert.assertEquals("Resolved value is not mangled", "value: with: 'yaml' # characters", ((Map<String, Object>) first.get("a")).get("c"));
+        Assert.assertNotSame("Changed subtree is copied", first.get("a"), second.get("a"));
+        Assert.assertSame("Untouched subtree is shared", first.get("d"), second.get("d"));
+
+        // and the text form survives a round trip
+        final YyallConfiguration reloaded = YyallConfiguration.load(new ByteArrayInputStream(conf.resolveString().getBytes()));
+        Assert.assertEquals("value: with: 'yaml' # characters", reloaded.get("a.c"));
+    }
+
+    @Test
+    public void testPutBean() {
+        final YyallConfiguration conf = YyallConfiguration.load(this.getClass().getResourceAsStream("/featuretest.yml"));
+        final Root root = conf.resolveAs(Root.class);
+        Assert.assertTrue(conf.put("bean", root));
+        Assert.assertEquals("batman", conf.get("bean.vars.user"));
+        Assert.assertTrue("Bean properties can be changed", conf.put("bean.vars.user", "alfred"));
+        Assert.assertEquals("alfred", conf.get("bean.vars.user"));
+        Assert.assertEquals("alfred", conf.format("${ bean.vars.user }"));
+        Assert.assertFalse("Missing bean properties can't be set", conf.put("bean.vars.missing", "value"));
+    }
+
+    @Test
+    public void testReferenceGraph() {
+        final YyallConfiguration conf = YyallConfiguration.load(this.getClass().getResourceAsStream("/featuretest.yml"));
+        final ReferenceGraph graph = conf.references();
+        Assert.assertEquals(3, graph.getCycles().size());
+        Assert.assertTrue(graph.getCycles().contains(Arrays.asList("cyclic.a", "cyclic.b", "cyclic.a")));
+        Assert.assertTrue(graph.getCycles().contains(Arrays.asList("reference.recursive", "reference.recursive")));
+        Assert.assertTrue(graph.getCycles().contains(Arrays.asList("depth.h[5]", "depth.k", "depth.h[5]")));
+        Assert.assertEquals(Collections.singleton("depth.h[2]"), graph.getReferences("depth.g"));
+        Assert.assertTrue("Only the fallback that is used is a reference", graph.getReferences("app.storage.path").contains("vars.storage"));
+        Assert.assertFalse(graph.getReferences("app.storage.path").contains("user.home"));
+
+        final List<String> order = graph.getOrder();
+        Assert.assertTrue(order.indexOf("depth.j") < order.indexOf("depth.h[4]"));
+        Assert.assertTrue(order.indexOf("depth.h[4]") < order.indexOf("depth.a"));
+
+        try {
+            conf.resolveAll();
+            Assert.fail("Cycles are reported before resolution");
+        } catch (ReferenceCycleException ex) {
+            Assert.assertTrue(graph.getCycles().contains(ex.getCycle()));
+        }
+
+        // every key resolves to the same value as it does on its own, including the keys on a cycle
+        final Map<String, String> resolved = graph.resolve();
+        Assert.assertEquals("value", resolved.get("depth.a"));
+        Assert.assertEquals("${reference.recursive}", resolved.get("reference.recursive"));
+        for (final Map.Entry<String, String> entry : resolved.entrySet()) {
+            Assert.assertEquals(entry.getKey(), conf.get(entry.getKey()), entry.getValue());
+        }
+    }
+
+    @Test
+    public void testResolveAll() {
+        final StringBuilder yaml = new StringBuilder("chain:\n  k0: start\n");
+        for (int i = 1; i < 5000; i++) {
+            yaml.append("  k").append(i).append(": ${chain.k").append(i - 1).append("}\n");
+        }
+        yaml.append("dynamic:\n  env: k4999\n  value: ${chain.${dynamic.env}}\n");
+        final YyallConfiguration conf = YyallConfiguration.load(new ByteArrayInputStream(yaml.toString().getBytes()));
+        final Map<String, String> resolved = conf.resolveAll();
+        Assert.assertEquals("start", resolved.get("chain.k4999"));
+        Assert.assertEquals("start", resolved.get("dynamic.value"));
+        Assert.assertEquals(Collections.singleton("dynamic.value"), conf.references().getDynamicKeys());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testCopyOnWrite() {
+        final YyallConfiguration conf = YyallConfiguration.load(this.getClass().getResourceAsStream("/featuretest.yml"));
+        final Map<String, Object> before = (Map<String, Object>) conf.resolve();
+        final Map<String, Object> vars = (Map<String, Object>) before.get("vars");
+
+        Assert.assertTrue(conf.put("vars.user", "alfred"));
+        Assert.assertEquals("alfred", conf.get("vars.user"));
+        Assert.assertEquals("Earlier versions are not changed", "batman", vars.get("user"));
+
+        final YyallConfiguration small = YyallConfiguration.load(new ByteArrayInputStream("a:\n  b: 1\nc:\n  d: 2\n".getBytes()));
+        final Map<String, Object> first = (Map<String, Object>) small.resolve();
+        Assert.assertTrue(small.put("a.b", 3));
+        final Map<String, Object> second = (Map<String, Object>) small.resolve();
+        Assert.assertNotSame(first.get("a"), second.get("a"));
+        Assert.assertSame("Unchanged subtrees are shared", first.get("c"), second.get("c"));
+
+        try {
+            ((Map<String, Object>) first.get("c")).put("d", 4);
+            Assert.fail("Loaded tree can't be changed in place");
+        } catch (UnsupportedOperationException ex) {
+            // expected
+        }
+
+        // values that are put are copied
+        final Map<String, Object> added = new HashMap<>();
+        added.put("name", "first");
+        Assert.assertTrue(conf.put("added", added));
+        added.put("name", "second");
+        Assert.assertEquals("first", conf.get("added.name"));
+
+        // all or nothing
+        final Map<String, Object> entries = new LinkedHashMap<>();
+        entries.put("vars.user", "robin");
+        entries.put("missing.path", "value");
+        Assert.assertFalse(conf.putAll(entries));
+        Assert.assertEquals("alfred", conf.get("vars.user"));
+    }
+
+    @Test
+    public void testConcurrentPut() throws Exception {
+        final YyallConfiguration conf = YyallConfiguration.load(new ByteArrayInputStream("pair:\n  left: 0\n  right: 0\n".getBytes()));
+        final ExecutorService executor = Executors.newFixedThreadPool(5);
+        try {
+            // failures in the tasks are rethrown by get() so they fail the test here instead of in a worker thread
+            final List<Future<?>> writers = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                final int writer = t;
+                writers.add(executor.submit(() -> {
+                    for (int i = 0; i < 500; i++) {
+                        final Map<String, Object> pair = new LinkedHashMap<>();
+                        pair.put("pair.left", writer + "-" + i);
+                        pair.put("pair.right", writer + "-" + i);
+                        if (!conf.putAll(pair)) {
+                            throw new IllegalStateException("putAll failed for " + pair);
+                        }
+                    }
+                }));
+            }
+            final Future<Long> reader = executor.submit(() -> {
+                long mismatches = 0;
+                for (int i = 0; i < 2000; i++) {
+                    final String both = conf.format("${pair.left}/${pair.right}");
+                    final String[] parts = both.split("/");
+                    if (!parts[0].equals(parts[1])) {
+                        mismatches++;
+                    }
+                }
+                return mismatches;
+            });
+            for (final Future<?> writer : writers) {
+                writer.get(60, TimeUnit.SECONDS);
+            }
+            Assert.assertEquals("Readers never see half of a change", Long.valueOf(0), reader.get(60, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+        Assert.assertEquals(conf.get("pair.left"), conf.get("pair.right"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testResolvedTreeIsUnmodifiable() {
+        final String yaml = "name: web\nplain:\n  a: 1\n  list: [x, y]\ntokens:\n  url: ${name}.local\n  list:\n    - ${name}\n    - y\n";
+        final YyallConfiguration conf = YyallConfiguration.load(new ByteArrayInputStream(yaml.getBytes()));
+        for (final Object resolved : Arrays.asList(conf.resolve(), conf.resolve(ForkJoinPool.commonPool()))) {
+            final Map<String, Object> root = (Map<String, Object>) resolved;
+            final Map<String, Object> plain = (Map<String, Object>) root.get("plain");
+            final Map<String, Object> tokens = (Map<String, Object>) root.get("tokens");
+            Assert.assertEquals("web.local", tokens.get("url"));
+
+            // parts with and without tokens follow the same contract
+            final List<Runnable> changes = Arrays.asList(
+                () -> root.put("other", "value"),
+                () -> plain.put("b", 2),
+                () -> tokens.put("b", 2),
+                () -> ((List<Object>) plain.get("list")).add("z"),
+                () -> ((List<Object>) tokens.get("list")).add("z")
+            );
+            for (final Runnable change : changes) {
+                try {
+                    change.run();
+                    Assert.fail("The resolved tree can't be changed");
+                } catch (UnsupportedOperationException ex) {
+                    // expected
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testPutValuesWithTokens() {
+        final YyallConfiguration conf = YyallConfiguration.load(new ByteArrayInputStream("name: web\nport: 8080\nplain: text\n".getBytes()));
+        Assert.assertEquals("text", conf.get("plain"));
+        try {
+            conf.getInt("plain");
+            Assert.fail("Text is not a number");
+        } catch (YyallRuntimeException ex) {
+            Assert.assertTrue(ex.getMessage().contains("plain"));
+        }
+
+        // values that are put are checked for tokens as they are put
+        Assert.assertTrue(conf.put("url", "${name}.local"));
+        Assert.assertEquals("web.local", conf.get("url"));
+        Assert.assertTrue(conf.put("ports", Arrays.asList("${port}", "9090")));
+        Assert.assertEquals(Arrays.asList("8080", "9090"), conf.getList("ports"));
+        Assert.assertTrue(conf.put("nested", Collections.singletonMap("port", "${port}")));
+        Assert.assertEquals(8080, conf.getInt("nested.port"));
+    }
+
+    @Test
+    public void testTypedGetters() {
+        final String yaml = "server:\n  port: 8080\n  quoted: '9090'\n  big: 10000000000\n  ratio: 0.75\n  secure: true\n  debug: 'off'\n"
+            + "  timeout: 30s\n  idle: PT1M\n  delay: 250\n  hosts:\n    - one\n    - ${server.name}\n  names: a, b ,c\n  name: two\n"
+            + "  derived: ${server.port}\n";
+        final YyallConfiguration conf = YyallConfiguration.load(new ByteArrayInputStream(yaml.getBytes()));
+
+        Assert.assertEquals(8080, conf.getInt("server.port"));
+        Assert.assertEquals(9090, conf.getInt("server.quoted"));
+        Assert.assertEquals(8080, conf.getInt("server.derived"));
+        Assert.assertEquals(10000000000L, conf.getLong("server.big"));
+        Assert.assertEquals(0.75, conf.getDouble("server.ratio"), 0);
+        Assert.assertTrue(conf.getBoolean("server.secure"));
+        Assert.assertFalse(conf.getBoolean("server.debug"));
+        Assert.assertEquals(Duration.ofSeconds(30), conf.getDuration("server.timeout"));
+        Assert.assertEquals(Duration.ofMinutes(1), conf.getDuration("server.idle"));
+        Assert.assertEquals(Duration.ofMillis(250), conf.getDuration("server.delay"));
+        Assert.assertEquals(Arrays.asList("one", "two"), conf.getList("server.hosts"));
+        Assert.assertEquals(Arrays.asList("a", "b", "c"), conf.getList("server.names"));
+
+        // defaults are only for missing values
+        Assert.assertEquals(42, conf.getInt("server.missing", 42));
+        Assert.assertNull(conf.getList("server.missing"));
+        try {
+            conf.getInt("server.big");
+            Assert.fail("Values out of range are not truncated");
+        } catch (YyallRuntimeException ex) {
+            Assert.assertTrue(ex.getMessage().contains("server.big"));
+        }
+        try {
+            conf.getInt("server.missing");
+            Assert.fail("Missing values without a default are an error");
+        } catch (YyallRuntimeException ex) {
+            // expected
+        }
+
+        // values that depend on the tree are converted again when it changes
+        Assert.assertTrue(conf.put("server.port", 8443));
+        Assert.assertEquals(8443, conf.getInt("server.port"));
+        Assert.assertEquals(8443, conf.getInt("server.derived"));
+    }
+
+    @Test
+    public void testConfigKey() {
+        final ConfigKey<Integer> port = ConfigKey.ofInt("server.port");
+        final ConfigKey<Integer> derived = ConfigKey.ofInt("server.derived");
+        final ConfigKey<Duration> missing = ConfigKey.ofDuration("server.timeout");
+        final ConfigKey<String> upper = ConfigKey.of("server.name", String::toUpperCase);
+
+        final Map<String, String> properties = new HashMap<>();
+        properties.put("custom.key.name", "first");
+        final YyallConfiguration conf = YyallConfiguration.load(new ByteArrayInputStream("server:\n  port: 8080\n  derived: ${server.port}\n  name: ${custom.key.name}\n".getBytes()))
+            .withProperties(() -> properties);
+
+        Assert.assertEquals(Integer.valueOf(8080), conf.get(port));
+        Assert.assertSame("Constant values are kept with the key", conf.get(port), conf.get(port));
+        Assert.assertEquals(Integer.valueOf(8080), conf.get(derived));
+        Assert.assertEquals(Duration.ofSeconds(5), conf.get(missing, Duration.ofSeconds(5)));
+        Assert.assertEquals("FIRST", conf.get(upper));
+
+        // values from property sources are never kept with the key
+        properties.put("custom.key.name", "second");
+        Assert.assertEquals("SECOND", conf.get(upper));
+
+        Assert.assertTrue(conf.put("server.port", 9090));
+        Assert.assertEquals(Integer.valueOf(9090), conf.get(port));
+        Assert.assertEquals(Integer.valueOf(9090), conf.get(derived));
+    }
+
+    @Test
+    public void testIndexedGet() {
+        final YyallConfiguration plain = YyallConfiguration.load(this.getClass().getResourceAsStream("/featuretest.yml"));
+        final YyallConfiguration indexed = YyallConfiguration.load(this.getClass().getResourceAsStream("/featuretest.yml")).withIndex();
+
+        // every key reads the same with and without the index
+        final Map<String, String> all = plain.references().resolve();
+        for (final String key : all.keySet()) {
+            Assert.assertEquals(key, plain.get(key), indexed.get(key));
+        }
+        Assert.assertTrue(indexed.has("vars.user"));
+        Assert.assertFalse(indexed.has("vars.missing"));
+
+        // the index follows changes, including replaced subtrees and views of the same tree
+        final YyallConfiguration view = indexed.withoutSystemProperties();
+        Assert.assertTrue(indexed.put("vars.user", "alfred"));
+        Assert.assertEquals("alfred", view.get("vars.user"));
+        final Map<String, Object> replaced = new HashMap<>();
+        replaced.put("name", "${vars.user}");
+        Assert.assertTrue(indexed.put("vars", replaced));
+        Assert.assertEquals("${vars.user}", indexed.get("vars.name"));
+        Assert.assertFalse(indexed.has("vars.user"));
+        Assert.assertTrue(indexed.put("vars.user", "robin"));
+        Assert.assertEquals("robin", view.get("vars.name"));
+    }
+
+    @Test
+    public void testKeys() {
+        final String yaml = "app:\n  db: ${app.dbx}\n  dbx: x\n  db0: 0\n  dbs:\n    - one\n    - two\napps:\n  db:\n    url: ${app.dbx}/main\n    pool:\n      size: 4\n";
+        final YyallConfiguration conf = YyallConfiguration.load(new ByteArrayInputStream(yaml.getBytes()));
+
+        Assert.assertEquals(Arrays.asList("app.db", "app.db0", "app.dbs[0]", "app.dbs[1]", "app.dbx"), conf.keys("app"));
+        Assert.assertEquals(Collections.singletonList("app.db"), conf.keys("app.db"));
+        Assert.assertEquals(Arrays.asList("app.dbs[0]", "app.dbs[1]"), conf.keys("app.dbs"));
+        Assert.assertEquals(Arrays.asList("apps.db.pool.size", "apps.db.url"), conf.keys("apps.db"));
+        Assert.assertTrue(conf.keys("missing").isEmpty());
+        Assert.assertEquals(7, conf.keys(null).size());
+
+        final Map<String, String> entries = new LinkedHashMap<>();
+        conf.entries("apps").forEach(entry -> entries.put(entry.getKey(), entry.getValue()));
+        Assert.assertEquals(Arrays.asList("apps.db.pool.size", "apps.db.url"), new ArrayList<>(entries.keySet()));
+        Assert.assertEquals("x/main", entries.get("apps.db.url"));
+
+        // the keys follow changes to the tree
+        Assert.assertTrue(conf.put("apps.db.user", "admin"));
+        Assert.assertEquals(Arrays.asList("apps.db.pool.size", "apps.db.url", "apps.db.user"), conf.keys("apps.db"));
+    }
+
+    @Test
+    public void testScopedView() {
+        final String yaml = "app:\n  name: shop\n  db:\n    host: localhost\n    url: jdbc://${app.db.host}/${app.name}\n    port: 5432\n    replicas:\n      - one\n      - two\n";
+        final YyallConfiguration conf = YyallConfiguration.load(new ByteArrayInputStream(yaml.getBytes())).withCache(16);
+        final ScopedConfiguration db = conf.at("app.db");
+
+        Assert.assertEquals("localhost", db.get("host"));
+        Assert.assertEquals("jdbc://localhost/shop", db.get("url"));
+        Assert.assertEquals(5432, db.getInt("port"));
+        Assert.assertEquals("two", db.get("replicas[1]"));
+        Assert.assertEquals("one", db.at("replicas").get("[0]"));
+        Assert.assertFalse(db.has("name"));
+        Assert.assertEquals(Arrays.asList("host", "port", "replicas[0]", "replicas[1]", "url"), db.keys(null));
+        Assert.assertEquals(Arrays.asList("replicas[0]", "replicas[1]"), db.keys("replicas"));
+
+        final Map<String, String> entries = new LinkedHashMap<>();
+        db.entries(null).forEach(entry -> entries.put(entry.getKey(), entry.getValue()));
+        Assert.assertEquals("jdbc://localhost/shop", entries.get("url"));
+
+        // the view reads through to the configuration
+        Assert.assertTrue(db.put("host", "remote"));
+        Assert.assertEquals("remote", conf.get("app.db.host"));
+        Assert.assertEquals("jdbc://remote/shop", db.get("url"));
+    }
+
+    @Test
+    public void testLookupPropertySource() {
+        final List<String> lookedUp = new ArrayList<>();
+        final PropertySource lookupOnly = new PropertySource() {
+            @Override
+            public Map<String, String> getProperties() {
+                throw new IllegalStateException("The source should never be read in full");
+            }
+
+            @Override
+            public String lookup(final String key) {
+                lookedUp.add(key);
+                return key.startsWith("lookup.") ? key.substring("lookup.".length()) : null;
+            }
+
+            @Override
+            public long version() {
+                return 0;
+            }
+        };
+        final YyallConfiguration conf = YyallConfiguration.load(this.getClass().getResourceAsStream("/featuretest.yml"))
+            .withProperties(lookupOnly, () -> Collections.singletonMap("lookup.first", "overridden"));
+
+        // the last source wins and the sources before it are not asked
+        Assert.assertEquals("overridden", conf.format("${lookup.first}"));
+        Assert.assertTrue(lookedUp.isEmpty());
+        Assert.assertEquals("second", conf.format("${lookup.second}"));
+        Assert.assertEquals("second", conf.format("${lookup.second}"));
+        Assert.assertEquals("Looked up values are kept until the source reports a change", Collections.singletonList("lookup.second"), lookedUp);
+        Assert.assertEquals("${missing.key}", conf.format("${missing.key}"));
+    }
+
+    @Test
+    public void testConcurrentLoad() throws InterruptedException {
+        final String expected = YyallConfiguration.load(this.getClass().getResourceAsStream("/featuretest.yml")).resolveString();
+        final AtomicLong mismatches = new AtomicLong();
+        final Thread[] loaders = new Thread[8];
+        for (int t = 0; t < loaders.length; t++) {
+            loaders[t] = new Thread(() -> {
+                for (int i = 0; i < 50; i++) {
+                    try {
+                        final YyallConfiguration conf = YyallConfiguration.load(this.getClass().getResourceAsStream("/featuretest.yml"));
+                        final Root root = conf.resolveAs(Root.class);
+                        if (!expected.equals(conf.resolveString()) || !"batman:robin".equals(root.getApp().getStorage().getAuth())) {
+                            mismatches.incrementAndGet();
+                        }
+                    } catch (RuntimeException ex) {
+                        mismatches.incrementAndGet();
+                    }
+                }
+            });
+            loaders[t].start();
+        }
+        for (final Thread loader : loaders) {
+            loader.join();
+        }
+        Assert.assertEquals(0, mismatches.get());
+    }
+
+    @Test
+    public void testParallelResolve() {
+        final YyallConfiguration conf = YyallConfiguration.load(this.getClass().getResourceAsStream("/featuretest.yml"));
+        final ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            Assert.assertEquals(conf.resolve(), conf.resolve(pool));
+            Assert.assertEquals(conf.resolveString(), conf.resolveString(pool));
+            Assert.assertEquals("batman:robin", conf.resolveAs(Root.class, pool).getApp().getStorage().getAuth());
+            Assert.assertEquals(conf.references().resolve(), conf.references().resolve(pool));
+
+            // long chains and wide levels
+            final StringBuilder yaml = new StringBuilder("chain:\n  k0: start\n");
+            for (int i = 1; i < 200; i++) {
+                yaml.append("  k").append(i).append(": ${chain.k").append(i - 1).append("}-").append(i % 10).append('\n');
+            }
+            yaml.append("wide:\n");
+            for (int i = 0; i < 500; i++) {
+                yaml.append("  - ${chain.k").append(i % 200).append("}\n");
+            }
+            final YyallConfiguration large = YyallConfiguration.load(new ByteArrayInputStream(yaml.toString().getBytes()));
+            Assert.assertEquals(large.resolve(), large.resolve(pool));
+            Assert.assertEquals(large.resolve(), large.resolve((ForkJoinPool) null));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testAsync() throws Exception {
+        final CompletableFuture<Map<String, String>> pending = new CompletableFuture<>();
+        final AsyncPropertySource slow = new AsyncPropertySource() {
+            @Override
+            public CompletableFuture<Map<String, String>> getPropertiesAsync(final Executor executor) {
+                return pending;
+            }
+
+            @Override
+            public Map<String, String> getProperties() {
+                throw new IllegalStateException("The source should not be read by blocking");
+            }
+        };
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final YyallConfiguration conf = YyallConfiguration.load(new ByteArrayInputStream("app:\n  name: ${custom.async.name}\n  greeting: hello ${app.name}\n".getBytes()))
+                .withProperties(slow);
+
+            final CompletableFuture<String> greeting = conf.getAsync("app.greeting", executor);
+            final CompletableFuture<String> formatted = conf.formatAsync("${app.name}!", executor);
+            final CompletableFuture<Object> resolved = conf.resolveAsync(executor);
+            Assert.assertFalse(greeting.isDone());
+
+            pending.complete(Collections.singletonMap("custom.async.name", "async"));
+            Assert.assertEquals("hello async", greeting.get(30, TimeUnit.SECONDS));
+            Assert.assertEquals("async!", formatted.get(30, TimeUnit.SECONDS));
+            Assert.assertEquals("hello async", ((Map<String, Map<String, Object>>) resolved.get(30, TimeUnit.SECONDS)).get("app").get("greeting"));
+
+            // without asynchronous sources the work is just moved to the executor
+            final YyallConfiguration plain = YyallConfiguration.load(this.getClass().getResourceAsStream("/featuretest.yml"));
+            Assert.assertEquals(plain.get("app.storage.auth"), plain.getAsync("app.storage.auth", executor).get(30, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testTokenFreeValues() {
+        final PropertySource source = new PropertySource() {
+            @Override
+            public Map<String, String> getProperties() {
+                throw new IllegalStateException("Properties should not be read for values without tokens");
+            }
+
+            @Override
+            public String lookup(final String key) {
+                return this.getProperties().get(key);
+            }
+        };
+        final YyallConfiguration conf = YyallConfiguration.load(new ByteArrayInputStream("plain: plain value\nnumber: 42\ntoken: ${custom.token.value}\n".getBytes()))
+            .withProperties(source);
+
+        // the stored value is returned without resolving anything or reading any properties
+        final String plain = conf.get("plain");
+        Assert.assertEquals("plain value", plain);
+        Assert.assertSame(plain, conf.get("plain"));
+        Assert.assertEquals("42", conf.get("number"));
+        Assert.assertSame(conf.get("number"), conf.get("number"));
+        Assert.assertSame(plain, conf.format(plain));
+        Assert.assertNull(conf.get("missing"));
+
+        // values with tokens still read the properties
+        try {
+            conf.get("token");
+            Assert.fail("Values with tokens should read properties");
+        } catch (IllegalStateException ex) {
+            // expected
+        }
+
+        // a changed value is seen right away
+        conf.put("plain", "changed");
+        Assert.assertEquals("changed", conf.get("plain"));
+    }
+
+    @Test
+    public void testResolvedTypes() {
+        final String yaml = "vars:\n  port: 8080\n  flag: true\n  ratio: 1.5\n  name: web\n  quoted: '8080'\n"
+            + "app:\n  port: ${vars.port}\n  flag: ${vars.flag}\n  ratio: ${vars.ratio}\n  both: ${vars.name}-${vars.port}\n"
+            + "  quoted: ${vars.quoted}\n  missing: ${vars.missing}\n  list: [1, '${vars.port}', x]\n";
+        final YyallConfiguration conf = YyallConfiguration.load(new ByteArrayInputStream(yaml.getBytes()));
+
+        // resolving used to dump the tree, format the text, and load it again
+        final DumperOptions options = new DumperOptions();
+        options.setDefaultFlowStyle(DumperOptions.FlowStyle.BLOCK);
+        options.setPrettyFlow(true);
+        final Object raw = new Yaml().load(yaml);
+        final Object expected = new Yaml().load(conf.format(new Yaml(options).dump(raw)));
+
+        final Object resolved = conf.resolve();
+        Assert.assertEquals(expected, resolved);
+        Assert.assertEquals(expected, conf.resolve(ForkJoinPool.commonPool()));
+        Assert.assertEquals(expected, new Yaml().load(conf.resolveString()));
+        Assert.assertEquals(expected, new Yaml().load(conf.resolveString(ForkJoinPool.commonPool())));
+
+        @SuppressWarnings("unchecked")
+        final Map<String, Object> app = (Map<String, Object>) ((Map<String, Object>) resolved).get("app");
+        Assert.assertEquals(Integer.valueOf(8080), app.get("port"));
+        Assert.assertEquals(Boolean.TRUE, app.get("flag"));
+        Assert.assertEquals(Double.valueOf(1.5), app.get("ratio"));
+        Assert.assertEquals("web-8080", app.get("both"));
+        Assert.assertEquals("${vars.missing}", app.get("missing"));
+        Assert.assertEquals(Arrays.asList(1, 8080, "x"), app.get("list"));
+        Assert.assertTrue(conf.resolveString().contains("port: 8080\n"));
+
+        // the same file resolves the same way as it always has
+        final YyallConfiguration feature = YyallConfiguration.load(this.getClass().getResourceAsStream("/featuretest.yml"));
+        final Object featureRaw = new Yaml().load(this.getClass().getResourceAsStream("/featuretest.yml"));
+        Assert.assertEquals(new Yaml().load(feature.format(new Yaml(options).dump(featureRaw))), feature.resolve());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testResolveAnchors() throws IOException {
+        final String yaml = "name: web\nshared: &s\n  url: ${name}.local\nfirst: *s\nsecond: *s\nrecursive: &r\n  label: ${name}\n  self: *r\n";
+        final YyallConfiguration conf = YyallConfiguration.load(new ByteArrayInputStream(yaml.getBytes()));
+
+        // written the same way that dumping writes anchors and aliases
+        final DumperOptions options = new DumperOptions();
+        options.setDefaultFlowStyle(DumperOptions.FlowStyle.BLOCK);
+        options.setPrettyFlow(true);
+        final String expected = conf.format(new Yaml(options).dump(new Yaml().load(yaml)));
+        final String resolved = conf.resolveString();
+        Assert.assertEquals(expected, resolved);
+        Assert.assertTrue(resolved.contains("&id001") && resolved.contains("*id001"));
+        Assert.assertTrue(resolved.contains("&id002") && resolved.contains("*id002"));
+
+        final ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+        try (InputStream stream = conf.resolveStream()) {
+            final byte[] buffer = new byte[64];
+            int read;
+            while ((read = stream.read(buffer)) >= 0) {
+                streamed.write(buffer, 0, read);
+            }
+        }
+        Assert.assertEquals(expected, new String(streamed.toByteArray(), StandardCharsets.UTF_8));
+
+        // the resolved text loads back into the same shape
+        final Map<String, Object> loaded = (Map<String, Object>) new Yaml().load(resolved);
+        Assert.assertSame(loaded.get("shared"), loaded.get("first"));
+        final Map<String, Object> recursive = (Map<String, Object>) loaded.get("recursive");
+        Assert.assertSame(recursive, recursive.get("self"));
+        Assert.assertEquals("web", recursive.get("label"));
+    }
+
+    @Test
+    public void testAnchorKeys() {
+        final String yaml = "name: web\nshared: &s\n  url: ${name}.local\nfirst: *s\nrecursive: &r\n  label: ${name}\n  self: *r\n";
+        final YyallConfiguration conf = YyallConfiguration.load(new ByteArrayInputStream(yaml.getBytes()));
+
+        // an alias is listed where its anchor is and not walked into again
+        Assert.assertEquals(Arrays.asList("name", "recursive.label", "shared.url"), conf.keys(null));
+        Assert.assertEquals(Collections.singletonList("recursive.label"), conf.keys("recursive"));
+
+        final Map<String, String> all = conf.resolveAll();
+        Assert.assertEquals("web.local", all.get("shared.url"));
+        Assert.assertEquals("web", all.get("recursive.label"));
+        Assert.assertEquals("web", conf.get("recursive.self.self.label"));
+    }
+
+    @Test
+    public void testCollidingPaths() {
+        final String yaml = "one: one\ntwo: two\n'a.b': ${one}\na:\n  b: ${two}\nref: ${a.b}\n";
+        final YyallConfiguration conf = YyallConfiguration.load(new ByteArrayInputStream(yaml.getBytes()));
+
+        // a key with a '.' in it is quoted so that it doesn't share a path with the nested key
+        final Map<String, String> all = conf.resolveAll();
+        Assert.assertEquals("one", all.get("['a.b']"));
+        Assert.assertEquals("two", all.get("a.b"));
+        Assert.assertEquals("two", all.get("ref"));
+        Assert.assertEquals("one", conf.get("['a.b']"));
+        Assert.assertTrue(conf.keys(null).contains("['a.b']"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testParallelCollidingPaths() {
+        final String yaml = "one: one\ntwo: two\n'a.b': ${one}\na:\n  b: ${two}\nref: ${a.b}\n";
+        final YyallConfiguration conf = YyallConfiguration.load(new ByteArrayInputStream(yaml.getBytes()));
+
+        // both nodes resolve the same way on a pool as they do one at a time
+        final Object sequential = conf.resolve();
+        final Object parallel = conf.resolve(ForkJoinPool.commonPool());
+        Assert.assertEquals(sequential, parallel);
+        Assert.assertEquals("one", ((Map<String, Object>) parallel).get("a.b"));
+        Assert.assertEquals("two", ((Map<String, Object>) ((Map<String, Object>) parallel).get("a")).get("b"));
+        Assert.assertEquals(conf.resolveString(), conf.resolveString(ForkJoinPool.commonPool()));
+    }
+
+    @Test
+    public void testCachedGetWithVolatileSource() {
+        final AtomicLong reads = new AtomicLong();
+        final Map<String, String> properties = new HashMap<>();
+        properties.put("custom.volatile.value", "first");
+        final PropertySource volatileSource = new PropertySource() {
+            @Override
+            public Map<String, String> getProperties() {
+                return properties;
+            }
+
+            @Override
+            public String lookup(final String key) {
+                reads.incrementAndGet();
+                return properties.get(key);
+            }
+        };
+        final Map<String, String> versioned = new HashMap<>();
+        versioned.put("custom.versioned.value", "one");
+        final AtomicLong version = new AtomicLong();
+        final PropertySource versionedSource = new PropertySource() {
+            @Override
+            public Map<String, String> getProperties() {
+                return versioned;
+            }
+
+            @Override
+            public long version() {
+                return version.get();
+            }
+        };
+        final YyallConfiguration conf = YyallConfiguration.load(new ByteArrayInputStream("value: ${custom.volatile.value}\nother: ${custom.versioned.value}\n".getBytes()))
+            .withoutEnvironmentVariables().withoutSystemProperties().withProperties(volatileSource, versionedSource).withCache(16);
+
+        // the volatile source doesn't drop the cached value so it is only read once
+        for (int i = 0; i < 5; i++) {
+            Assert.assertEquals("first", conf.get("value"));
+        }
+        final long afterGets = reads.get();
+        Assert.assertTrue(afterGets > 0);
+        Assert.assertEquals("one", conf.get("other"));
+        Assert.assertEquals("first", conf.get("value"));
+        Assert.assertEquals(afterGets, reads.get());
+
+        // but it is still looked up on demand when something is resolved
+        properties.put("custom.volatile.value", "second");
+        Assert.assertEquals("second", conf.format("${custom.volatile.value}"));
+        Assert.assertEquals("first", conf.get("value"));
+
+        // a change reported by a versioned source drops the cached values
+        versioned.put("custom.versioned.value", "two");
+        version.incrementAndGet();
+        Assert.assertEquals("two", conf.get("other"));
+        Assert.assertEquals("second", conf.get("value"));
+    }
+
+    @Test
+    public void testCachedGetFreezesSystemProperties() throws InterruptedException {
+        final String name = "yyall.test.cached.frozen";
+        System.setProperty(name, "first");
+        try {
+            final YyallConfiguration uncached = YyallConfiguration.load(new ByteArrayInputStream(("value: ${" + name + "}\n").getBytes()));
+            final YyallConfiguration cached = uncached.withCache(16);
+            final YyallConfiguration expiring = uncached.withCache(16, 1, TimeUnit.MILLISECONDS);
+            Assert.assertEquals("first", cached.get("value"));
+            Assert.assertEquals("first", expiring.get("value"));
+
+            // the cached value doesn't see the system property change
+            System.setProperty(name, "second");
+            Assert.assertEquals("first", cached.get("value"));
+            Assert.assertEquals("second", cached.format("${" + name + "}"));
+            Assert.assertEquals("second", uncached.get("value"));
+
+            // until it expires or the configuration is refreshed
+            Thread.sleep(5);
+            Assert.assertEquals("second", expiring.get("value"));
+            cached.refresh();
+            Assert.assertEquals("second", cached.get("value"));
+        } finally {
+            System.clearProperty(name);
+        }
+    }
 }
@@ -0,0 +1,114 @@
+package io.github.chrisruffalo.yyall.bean;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.yaml.snakeyaml.Yaml;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class PathIndexTest {
+
+    private static Object tree(final int size) {
+        final Map<String, Object> items = new LinkedHashMap<>();
+        for (int i = 0; i < size; i++) {
+            final Map<String, Object> item = new LinkedHashMap<>();
+            item.put("name", "item" + i);
+            item.put("tags", new ArrayList<>(Arrays.asList("a" + i, "b" + i)));
+            items.put("item" + i, item);
+        }
+        final Map<String, Object> root = new LinkedHashMap<>();
+        root.put("items", items);
+        return PersistentTree.freeze(root);
+    }
+
+    private static PathIndex put(final PathIndex index, final String key, final Object value) {
+        final Property property = Property.parse(key);
+        final Object root = PersistentTree.with(index.root(), property, PersistentTree.frozenCopy(value));
+        return index.with(root, Collections.singletonList(property));
+    }
+
+    private static void assertIndexed(final PathIndex index) {
+        // every path that is indexed reads the same as walking the tree
+        PropertyPaths.walk(index.root(), (path, value) -> Assert.assertSame(path, value, index.lookup(path)));
+    }
+
+    @Test
+    public void testIndexFollowsChanges() {
+        final PathIndex first = PathIndex.of(tree(2000));
+        assertIndexed(first);
+
+        final PathIndex second = put(first, "items.item7.name", "changed");
+        final Map<String, Object> replaced = new HashMap<>();
+        replaced.put("other", "value");
+        final PathIndex third = put(second, "items.item9", replaced);
+        final PathIndex fourth = put(third, "items.item2000", Collections.singletonMap("name", "added"));
+        assertIndexed(second);
+        assertIndexed(third);
+        assertIndexed(fourth);
+
+        Assert.assertEquals("changed", fourth.lookup("items.item7.name"));
+        Assert.assertEquals("value", fourth.lookup("items.item9.other"));
+        Assert.assertNull(fourth.lookup("items.item9.name"));
+        Assert.assertNull(fourth.lookup("items.item9.tags[0]"));
+        Assert.assertEquals("added", fourth.lookup("items.item2000.name"));
+
+        // earlier versions are not changed by later ones
+        Assert.assertEquals("item7", first.lookup("items.item7.name"));
+        Assert.assertEquals("a9", first.lookup("items.item9.tags[0]"));
+        Assert.assertEquals("a9", second.lookup("items.item9.tags[0]"));
+        Assert.assertNull(third.lookup("items.item2000.name"));
+    }
+
+    @Test
+    public void testReplacedAncestor() {
+        final Object root = PersistentTree.freeze(new Yaml().load("a:\n  b:\n    c: 0\n    d: 5\n"));
+        final PathIndex index = PathIndex.of(root);
+
+        // a later key replaces what an earlier key changed
+        final List<Property> keys = Arrays.asList(Property.parse("a.b.c"), Property.parse("a"));
+        Object changed = PersistentTree.with(root, keys.get(0), 1);
+        changed = PersistentTree.with(changed, keys.get(1), "x");
+        final PathIndex replaced = index.with(changed, keys);
+        assertIndexed(replaced);
+        Assert.assertEquals("x", replaced.lookup("a"));
+        Assert.assertNull(replaced.lookup("a.b"));
+        Assert.assertNull(replaced.lookup("a.b.c"));
+        Assert.assertNull(replaced.lookup("a.b.d"));
+
+        // and the other way around, a key changes a value that an earlier key replaced
+        final Map<String, Object> other = new HashMap<>();
+        other.put("b", Collections.singletonMap("e", 2));
+        final List<Property> reversed = Arrays.asList(Property.parse("a"), Property.parse("a.b.c"));
+        Object again = PersistentTree.with(root, reversed.get(0), PersistentTree.frozenCopy(other));
+        again = PersistentTree.with(again, reversed.get(1), 1);
+        final PathIndex rebuilt = index.with(again, reversed);
+        assertIndexed(rebuilt);
+        Assert.assertEquals(1, rebuilt.lookup("a.b.c"));
+        Assert.assertEquals(2, rebuilt.lookup("a.b.e"));
+        Assert.assertNull(rebuilt.lookup("a.b.d"));
+    }
+
+    @Test
+    public void testRecursiveAnchor() {
+        final Object root = PersistentTree.freeze(new Yaml().load("name: web\nrecursive: &r\n  label: x\n  self: *r\n"));
+        final PathIndex index = PathIndex.of(root);
+        Assert.assertEquals("x", index.lookup("recursive.label"));
+        Assert.assertSame(index.lookup("recursive"), index.lookup("recursive.self"));
+
+        // paths under the alias are walked from the tree instead
+        Assert.assertNull(index.lookup("recursive.self.label"));
+        Assert.assertEquals("x", PropertyNavigator.getProperty(index, "recursive.self.label"));
+
+        final PathIndex changed = put(index, "recursive.label", "y");
+        Assert.assertEquals("y", changed.lookup("recursive.label"));
+        // the alias still points at the map from before the change, like the tree does
+        Assert.assertSame(index.lookup("recursive"), changed.lookup("recursive.self"));
+        Assert.assertEquals("x", PropertyNavigator.getProperty(changed, "recursive.self.label"));
+    }
+}
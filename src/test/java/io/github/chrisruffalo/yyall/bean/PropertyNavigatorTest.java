@@ -1,10 +1,18 @@
 package io.github.chrisruffalo.yyall.bean;
 
+import io.github.chrisruffalo.yyall.model.Reference;
+import io.github.chrisruffalo.yyall.model.Root;
+import io.github.chrisruffalo.yyall.model.Variables;
 import org.junit.Assert;
 import org.junit.Test;
 import org.yaml.snakeyaml.DumperOptions;
 import org.yaml.snakeyaml.Yaml;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
 public class PropertyNavigatorTest {
 
     private static Object load(final String resourcePath) {
@@ -36,4 +44,52 @@ public class PropertyNavigatorTest {
         Assert.assertEquals("Nested object should be 'two'", "two", nestedObject.toString());
     }
 
+
+    @Test
+    public void testMisses() {
+        final Object source = load("featuretest.yml");
+        Assert.assertNull("Missing key is a miss", PropertyNavigator.getProperty(source, "vars.missing"));
+        Assert.assertNull("Missing parent is a miss", PropertyNavigator.getProperty(source, "missing.vars.storage"));
+        Assert.assertNull("Index past the end of a list is a miss", PropertyNavigator.getProperty(source, "vars.list[25]"));
+        Assert.assertNull("Index into a map is a miss", PropertyNavigator.getProperty(source, "vars[0]"));
+        Assert.assertNull("Property of a scalar is a miss", PropertyNavigator.getProperty(source, "vars.storage.bytes"));
+        Assert.assertFalse(PropertyNavigator.hasProperty(source, "vars.list[6][25]"));
+        Assert.assertTrue(PropertyNavigator.hasProperty(source, "vars.list[6][2]"));
+    }
+
+    @Test
+    public void testBeanNavigation() {
+        final Reference reference = new Reference();
+        reference.setHome("/home/user");
+        final Root root = new Root();
+        root.setReference(reference);
+        final Map<String, Object> holder = new HashMap<>();
+        holder.put("root", root);
+
+        Assert.assertEquals("/home/user", PropertyNavigator.getProperty(holder, "root.reference.home"));
+        Assert.assertNull("Null bean property is a miss", PropertyNavigator.getProperty(holder, "root.reference.user"));
+        Assert.assertNull("Missing bean property is a miss", PropertyNavigator.getProperty(holder, "root.reference.missing"));
+    }
+
+    @Test
+    public void testSetProperty() {
+        final Root root = new Root();
+        root.setVars(new Variables());
+        final Map<String, Object> holder = new HashMap<>();
+        holder.put("list", new ArrayList<>(Arrays.asList("zero", "one")));
+        holder.put("root", root);
+
+        Assert.assertTrue("Bean property is set", PropertyNavigator.setProperty(holder, Property.parse("root.vars.host"), "remote"));
+        Assert.assertEquals("remote", root.getVars().getHost());
+        Assert.assertTrue("Value is converted to the property type", PropertyNavigator.setProperty(holder, Property.parse("root.vars.port"), 9090));
+        Assert.assertEquals("9090", root.getVars().getPort());
+        Assert.assertTrue("List index is set", PropertyNavigator.setProperty(holder, Property.parse("list[1]"), "uno"));
+        Assert.assertEquals("uno", PropertyNavigator.getProperty(holder, "list[1]"));
+        Assert.assertTrue("New map key is set", PropertyNavigator.setProperty(holder, Property.parse("added"), "value"));
+        Assert.assertEquals("value", PropertyNavigator.getProperty(holder, "added"));
+
+        Assert.assertFalse("Missing parent is not set", PropertyNavigator.setProperty(holder, Property.parse("root.reference.home"), "/home"));
+        Assert.assertFalse("Missing bean property is not set", PropertyNavigator.setProperty(holder, Property.parse("root.vars.missing"), "value"));
+        Assert.assertFalse("Index past the end of a list is not set", PropertyNavigator.setProperty(holder, Property.parse("list[5]"), "five"));
+    }
 }
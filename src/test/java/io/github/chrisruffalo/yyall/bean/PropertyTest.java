@@ -68,4 +68,53 @@ public class PropertyTest {
             idx++;
         }
     }
+
+    @Test
+    public void testParsedIndex() {
+        final Property indexed = Property.parse("first[12].second[0][x]");
+        Assert.assertFalse("Name segment is not an index", indexed.isIndex());
+        Assert.assertEquals("Name segment has no index", -1, indexed.index());
+        Assert.assertTrue("Numeric segment is an index", indexed.next().isIndex());
+        Assert.assertEquals("Index is parsed", 12, indexed.next().index());
+        Assert.assertEquals("Index is parsed", 0, indexed.next().next().next().index());
+        Assert.assertEquals("Non-numeric segment is kept", "[x]", indexed.next().next().next().next().segment());
+        Assert.assertFalse("Non-numeric segment is not an index", indexed.next().next().next().next().isIndex());
+    }
+
+    @Test
+    public void testSegmentEdges() {
+        final Property dots = Property.parse("..first..second.");
+        Assert.assertEquals("first", dots.segment());
+        Assert.assertEquals("second", dots.next().segment());
+        Assert.assertFalse(dots.next().hasNext());
+
+        final Property trailing = Property.parse("first[1]dropped.second");
+        Assert.assertEquals("[1]", trailing.next().segment());
+        Assert.assertEquals("Text after an index is dropped", "second", trailing.next().next().segment());
+
+        final Property unclosed = Property.parse("first[1");
+        Assert.assertEquals("Unclosed index is part of the name", "first[1", unclosed.segment());
+        Assert.assertFalse(unclosed.hasNext());
+    }
+
+    @Test
+    public void testCachedParse() {
+        Assert.assertSame("Parsed properties are cached", Property.parse("cached.property[2]"), Property.parse("cached.property[2]"));
+    }
+
+    @Test
+    public void testQuotedKeySegment() {
+        final Property quoted = Property.parse("first['second.key'][2]['it''s'].last");
+        Assert.assertEquals("first", quoted.segment());
+        Assert.assertEquals("Quoted key is one segment", "second.key", quoted.next().segment());
+        Assert.assertFalse("Quoted key is not an index", quoted.next().isIndex());
+        Assert.assertEquals(2, quoted.next().next().index());
+        Assert.assertEquals("Doubled quote is unescaped", "it's", quoted.next().next().next().segment());
+        Assert.assertEquals("last", quoted.next().next().next().next().segment());
+        Assert.assertFalse(quoted.next().next().next().next().hasNext());
+
+        final Property root = Property.parse("['a.b']");
+        Assert.assertEquals("a.b", root.segment());
+        Assert.assertFalse(root.hasNext());
+    }
 }
@@ -0,0 +1,98 @@
+package io.github.chrisruffalo.yyall.properties;
+
+import io.github.chrisruffalo.yyall.YyallConfiguration;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.concurrent.TimeUnit;
+
+public class DirectorySourceTest {
+
+    private static void write(final Path path, final String content, final long modified) throws IOException {
+        Files.write(path, content.getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(path, FileTime.fromMillis(modified));
+    }
+
+    @Test
+    public void testDirectory() throws IOException {
+        final Path directory = Files.createTempDirectory("yyall-directory");
+        final Path user = directory.resolve("db.user");
+        final Path password = directory.resolve("db.password");
+        final Path hidden = directory.resolve(".hidden");
+        try {
+            write(user, "admin\n", 1000);
+            write(hidden, "hidden", 1000);
+            final DirectorySource source = new DirectorySource(directory, 0, TimeUnit.MILLISECONDS);
+
+            Assert.assertEquals("admin", source.lookup("db.user"));
+            Assert.assertNull(source.lookup("db.password"));
+            Assert.assertNull(source.lookup(".hidden"));
+            Assert.assertNull(source.lookup("../db.user"));
+            Assert.assertEquals(new HashSet<>(Arrays.asList("db.user")), source.keys());
+
+            final YyallConfiguration conf = YyallConfiguration.load(new ByteArrayInputStream("url: ${db.user}:${db.password|'none'}\n".getBytes()))
+                .withProperties(source);
+            Assert.assertEquals("admin:none", conf.get("url"));
+
+            // changes are found through the modification time and size
+            final long version = source.version();
+            write(user, "root", 2000);
+            write(password, "secret", 2000);
+            Assert.assertNotEquals(version, source.version());
+            Assert.assertEquals("root:secret", conf.get("url"));
+        } finally {
+            Files.deleteIfExists(user);
+            Files.deleteIfExists(password);
+            Files.deleteIfExists(hidden);
+            Files.deleteIfExists(directory);
+        }
+    }
+
+    @Test
+    public void testMissingFiles() throws IOException {
+        final Path directory = Files.createTempDirectory("yyall-directory");
+        final Path added = directory.resolve("added");
+        try {
+            Files.setLastModifiedTime(directory, FileTime.fromMillis(1000));
+            final DirectorySource source = new DirectorySource(directory, 0, TimeUnit.MILLISECONDS);
+            for (int i = 0; i < 5000; i++) {
+                Assert.assertNull(source.lookup("missing" + i));
+            }
+            Assert.assertNull(source.lookup("added"));
+            final long version = source.version();
+            Assert.assertEquals(version, source.version());
+
+            // a file that is added to the directory is found even though it was missing before
+            Files.write(added, "here".getBytes(StandardCharsets.UTF_8));
+            Files.setLastModifiedTime(directory, FileTime.fromMillis(2000));
+            Assert.assertNotEquals(version, source.version());
+            Assert.assertEquals("here", source.lookup("added"));
+        } finally {
+            Files.deleteIfExists(added);
+            Files.deleteIfExists(directory);
+        }
+    }
+
+    @Test
+    public void testLargeFile() throws IOException {
+        final Path directory = Files.createTempDirectory("yyall-directory");
+        final Path large = directory.resolve("large");
+        try {
+            final char[] content = new char[128 * 1024];
+            Arrays.fill(content, 'x');
+            write(large, new String(content), 1000);
+            Assert.assertEquals(new String(content), new DirectorySource(directory).lookup("large"));
+        } finally {
+            Files.deleteIfExists(large);
+            Files.deleteIfExists(directory);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package io.github.chrisruffalo.yyall.properties;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class EnvironmentVariableSourceTest {
+
+    @Test
+    public void testRelaxedName() {
+        Assert.assertEquals("APP_DB_HOST", EnvironmentVariableSource.relaxedName("app.db.host"));
+        Assert.assertEquals("APP_DB_HOST", EnvironmentVariableSource.relaxedName("app.db-host"));
+        Assert.assertEquals("SERVERS_0_NAME", EnvironmentVariableSource.relaxedName("servers[0].name"));
+        Assert.assertEquals("SERVERS_0", EnvironmentVariableSource.relaxedName("servers[0]"));
+        Assert.assertEquals("APP_DB_HOST", EnvironmentVariableSource.relaxedName("APP_DB_HOST"));
+    }
+
+    @Test
+    public void testIndex() {
+        final Map<String, String> environment = new HashMap<>();
+        environment.put("app-db-host", "other");
+        environment.put("APP_DB_HOST", "localhost");
+        environment.put("SERVERS_0_NAME", "first");
+        final Map<String, String> index = EnvironmentVariableSource.index(environment);
+        Assert.assertEquals("localhost", index.get(EnvironmentVariableSource.relaxedName("app.db.host")));
+        Assert.assertEquals("first", index.get(EnvironmentVariableSource.relaxedName("servers[0].name")));
+    }
+
+    @Test
+    public void testLookup() {
+        final String path = System.getenv("PATH");
+        Assert.assertEquals(path, new EnvironmentVariableSource().lookup("PATH"));
+        Assert.assertNull(new EnvironmentVariableSource().lookup("path"));
+        Assert.assertEquals(path, new EnvironmentVariableSource(true).lookup("path"));
+    }
+}
@@ -0,0 +1,58 @@
+package io.github.chrisruffalo.yyall.properties;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.TimeUnit;
+
+public class PropertiesFileSourceTest {
+
+    private static void write(final Path path, final String content, final long modified) throws IOException {
+        Files.write(path, content.getBytes(StandardCharsets.ISO_8859_1));
+        Files.setLastModifiedTime(path, FileTime.fromMillis(modified));
+    }
+
+    @Test
+    public void testPropertiesFile() throws IOException {
+        final Path file = Files.createTempFile("yyall", ".properties");
+        try {
+            write(file, "app.name=first\napp.port = 8080\n", 1000);
+            final PropertiesFileSource source = new PropertiesFileSource(file, 1, TimeUnit.HOURS);
+            Assert.assertEquals("first", source.lookup("app.name"));
+            Assert.assertEquals("8080", source.lookup("app.port"));
+            Assert.assertNull(source.lookup("app.missing"));
+
+            // not checked again until the interval has passed
+            write(file, "app.name=second\n", 2000);
+            final long version = source.version();
+            Assert.assertEquals("first", source.lookup("app.name"));
+
+            final PropertiesFileSource revalidated = new PropertiesFileSource(file, 0, TimeUnit.MILLISECONDS);
+            Assert.assertEquals("second", revalidated.lookup("app.name"));
+            final long before = revalidated.version();
+            write(file, "app.name=third\n", 3000);
+            Assert.assertNotEquals(before, revalidated.version());
+            Assert.assertEquals("third", revalidated.lookup("app.name"));
+            Assert.assertEquals(version, source.version());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void testMissingFile() throws IOException {
+        final Path directory = Files.createTempDirectory("yyall-properties");
+        try {
+            final PropertiesFileSource source = new PropertiesFileSource(directory.resolve("missing.properties"));
+            Assert.assertNull(source.lookup("app.name"));
+            Assert.assertTrue(source.keys().isEmpty());
+        } finally {
+            Files.deleteIfExists(directory);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package io.github.chrisruffalo.yyall.properties;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+
+public class RefreshingPropertySourceTest {
+
+    private static boolean await(final BooleanSupplier condition) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                return false;
+            }
+            Thread.sleep(5);
+        }
+        return true;
+    }
+
+    @Test
+    public void testRefresh() throws InterruptedException {
+        final AtomicReference<Map<String, String>> current = new AtomicReference<>(Collections.singletonMap("app.name", "first"));
+        final PropertySource slow = current::get;
+
+        try (final RefreshingPropertySource source = RefreshingPropertySource.every(slow, 10, TimeUnit.MILLISECONDS)) {
+            Assert.assertEquals("first", source.lookup("app.name"));
+            final long version = source.version();
+
+            current.set(Collections.singletonMap("app.name", "second"));
+            Assert.assertTrue(await(() -> "second".equals(source.lookup("app.name"))));
+            Assert.assertNotEquals(version, source.version());
+
+            Assert.assertTrue(source.refreshCount() > 0);
+            Assert.assertTrue(source.staleness(TimeUnit.SECONDS) < 30);
+        }
+    }
+
+    @Test
+    public void testFailureKeepsProperties() {
+        final AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        final PropertySource flaky = () -> {
+            if (failure.get() != null) {
+                throw failure.get();
+            }
+            return Collections.singletonMap("app.name", "good");
+        };
+        try (final RefreshingPropertySource source = RefreshingPropertySource.every(flaky, 1, TimeUnit.HOURS)) {
+            failure.set(new IllegalStateException("unavailable"));
+            Assert.assertFalse(source.refresh());
+            Assert.assertEquals("good", source.lookup("app.name"));
+            Assert.assertEquals(1, source.failureCount());
+            Assert.assertSame(failure.get(), source.lastFailure());
+        }
+    }
+
+    @Test
+    public void testAdaptiveInterval() {
+        final PropertySource fixed = () -> Collections.singletonMap("app.name", "same");
+        try (final RefreshingPropertySource source = RefreshingPropertySource.adaptive(fixed, 1, 4, TimeUnit.HOURS)) {
+            Assert.assertEquals(1, source.interval(TimeUnit.HOURS));
+            source.refresh();
+            Assert.assertEquals(2, source.interval(TimeUnit.HOURS));
+            source.refresh();
+            source.refresh();
+            Assert.assertEquals(4, source.interval(TimeUnit.HOURS));
+        }
+    }
+
+    @Test
+    public void testLongAdaptiveInterval() {
+        final PropertySource fixed = () -> Collections.singletonMap("app.name", "same");
+        try (final RefreshingPropertySource source = RefreshingPropertySource.adaptive(fixed, TimeUnit.DAYS.toNanos(1), Long.MAX_VALUE, TimeUnit.NANOSECONDS)) {
+            // the interval keeps growing until the maximum without wrapping around
+            for (int i = 0; i < 64; i++) {
+                source.refresh();
+                Assert.assertTrue(source.interval(TimeUnit.NANOSECONDS) >= TimeUnit.DAYS.toNanos(1));
+            }
+            Assert.assertEquals(Long.MAX_VALUE, source.interval(TimeUnit.NANOSECONDS));
+        }
+    }
+
+    @Test
+    public void testCloseCancelsRead() {
+        final ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1);
+        scheduler.setRemoveOnCancelPolicy(true);
+        try {
+            final PropertySource fixed = () -> Collections.singletonMap("app.name", "same");
+            final RefreshingPropertySource source = RefreshingPropertySource.on(fixed, 1, 1, TimeUnit.HOURS, scheduler);
+            Assert.assertEquals(1, scheduler.getQueue().size());
+            source.close();
+            Assert.assertTrue("The scheduler that was passed in has no read left", scheduler.getQueue().isEmpty());
+            Assert.assertFalse(scheduler.isShutdown());
+        } finally {
+            scheduler.shutdownNow();
+        }
+    }
+}
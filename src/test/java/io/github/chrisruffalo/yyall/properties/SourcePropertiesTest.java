@@ -0,0 +1,61 @@
+package io.github.chrisruffalo.yyall.properties;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SourcePropertiesTest {
+
+    private static PropertySource counting(final AtomicInteger lookups) {
+        return new PropertySource() {
+            @Override
+            public Map<String, String> getProperties() {
+                return Collections.emptyMap();
+            }
+
+            @Override
+            public String lookup(final String key) {
+                lookups.incrementAndGet();
+                return key.startsWith("known.") ? "value" : null;
+            }
+
+            @Override
+            public long version() {
+                return 0;
+            }
+        };
+    }
+
+    @Test
+    public void testReadsAreKept() {
+        final AtomicInteger lookups = new AtomicInteger();
+        final PropertySource source = counting(lookups);
+        final SourceProperties properties = new SourceProperties(new PropertySource[]{source}, new long[]{0}, null);
+        Assert.assertEquals("value", properties.get("known.key"));
+        Assert.assertNull(properties.get("other.key"));
+        Assert.assertEquals("value", properties.get("known.key"));
+        Assert.assertNull(properties.get("other.key"));
+        Assert.assertEquals("Hits and misses are both kept", 2, lookups.get());
+
+        // a view for the same version shares what was read
+        final SourceProperties next = new SourceProperties(new PropertySource[]{source}, new long[]{0}, properties);
+        Assert.assertEquals("value", next.get("known.key"));
+        Assert.assertEquals(2, lookups.get());
+    }
+
+    @Test
+    public void testReadsAreBounded() {
+        final AtomicInteger lookups = new AtomicInteger();
+        final SourceProperties properties = new SourceProperties(new PropertySource[]{counting(lookups)}, new long[]{0}, null);
+        // a source that never changes version is asked for far more names than are kept
+        for (int i = 0; i < 100_000; i++) {
+            properties.get("name." + i);
+        }
+        Assert.assertEquals(100_000, lookups.get());
+        properties.get("name.0");
+        Assert.assertEquals("The oldest names were dropped", 100_001, lookups.get());
+    }
+}
@@ -0,0 +1,108 @@
+package io.github.chrisruffalo.yyall.reload;
+
+import io.github.chrisruffalo.yyall.YyallConfiguration;
+import io.github.chrisruffalo.yyall.exception.YyallRuntimeException;
+import io.github.chrisruffalo.yyall.resolver.DefaultStringResolver;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.UnaryOperator;
+
+public class ReloadingConfigurationTest {
+
+    private static void write(final Path path, final String content) throws IOException {
+        Files.write(path, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static boolean await(final BooleanSupplier condition) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                return false;
+            }
+            Thread.sleep(10);
+        }
+        return true;
+    }
+
+    @Test
+    public void testReload() throws IOException, InterruptedException {
+        final Path directory = Files.createTempDirectory("yyall-reload");
+        final Path path = directory.resolve("config.yml");
+        write(path, "app:\n  name: first\n  greeting: hello ${app.name}\n");
+
+        try (final ReloadingConfiguration conf = ReloadingConfiguration.watch(path, new DefaultStringResolver(), UnaryOperator.identity(), 20, TimeUnit.MILLISECONDS)) {
+            Assert.assertEquals("hello first", conf.get("app.greeting"));
+
+            // a burst of writes is picked up once it settles
+            write(path, "app:\n  name: second\n");
+            write(path, "app:\n  name: third\n  greeting: hello ${app.name}\n");
+            Assert.assertTrue(await(() -> "hello third".equals(conf.get("app.greeting"))));
+            final long generation = conf.generation();
+
+            // broken content keeps the last good configuration
+            write(path, "app: [\n");
+            Assert.assertTrue(await(() -> conf.lastFailure() != null));
+            Assert.assertEquals(generation, conf.generation());
+            Assert.assertEquals("hello third", conf.get("app.greeting"));
+
+            // and recovers when the content is fixed
+            write(path, "app:\n  name: fourth\n  greeting: hello ${app.name}\n");
+            Assert.assertTrue(await(() -> "hello fourth".equals(conf.get("app.greeting"))));
+            Assert.assertNull(conf.lastFailure());
+        } finally {
+            Files.deleteIfExists(path);
+            Files.deleteIfExists(directory);
+        }
+    }
+
+    @Test
+    public void testRejectedByCustomizer() throws IOException {
+        final Path directory = Files.createTempDirectory("yyall-reload");
+        final Path path = directory.resolve("config.yml");
+        write(path, "app:\n  name: first\n");
+
+        final UnaryOperator<YyallConfiguration> customizer = conf -> {
+            if (conf.get("app.name") == null) {
+                throw new IllegalStateException("app.name is required");
+            }
+            return conf.withCache(16);
+        };
+        try (final ReloadingConfiguration conf = ReloadingConfiguration.watch(path, customizer)) {
+            write(path, "app:\n  other: value\n");
+            Assert.assertFalse(conf.reload());
+            Assert.assertTrue(conf.lastFailure() instanceof IllegalStateException);
+            Assert.assertEquals("first", conf.get("app.name"));
+
+            write(path, "app:\n  name: second\n");
+            Assert.assertTrue(conf.reload());
+            Assert.assertEquals("second", conf.get("app.name"));
+        } finally {
+            Files.deleteIfExists(path);
+            Files.deleteIfExists(directory);
+        }
+    }
+
+    @Test
+    public void testMissingWatchedDirectory() throws IOException {
+        final Path directory = Files.createTempDirectory("yyall-reload");
+        final Path path = directory.resolve("config.yml");
+        write(path, "app:\n  name: first\n");
+
+        try {
+            ReloadingConfiguration.watch(path, new DefaultStringResolver(), UnaryOperator.identity(), 20, TimeUnit.MILLISECONDS, directory.resolve("missing").resolve("other.properties"));
+            Assert.fail("a file in a directory that doesn't exist can't be watched");
+        } catch (YyallRuntimeException ex) {
+            Assert.assertTrue(ex.getCause() instanceof IOException);
+        } finally {
+            Files.deleteIfExists(path);
+            Files.deleteIfExists(directory);
+        }
+    }
+}
@@ -147,4 +147,77 @@ public class DefaultStringResolverTest {
         Assert.assertEquals("Does not resolve wrong quotes", "${ `nope` }", resolver.resolve("${ `nope` }", testProps));
         Assert.assertEquals("Resolves properties in literals", "/env/opt/home", resolver.resolve("${ '/env${user.home}' }", testProps));
     }
+
+    @Test
+    public void testCustomTokens() {
+        final Map<String, String> testProps = new HashMap<>();
+        testProps.put("actual", "answer");
+        final DefaultStringResolver resolver = new DefaultStringResolver();
+        Assert.assertEquals("Default tokens resolve", "answer {{actual}}", resolver.resolve("${actual} {{actual}}", testProps));
+        resolver.setStartToken("{{");
+        resolver.setEndToken("}}");
+        Assert.assertEquals("Custom tokens resolve after change", "${actual} answer", resolver.resolve("${actual} {{actual}}", testProps));
+        Assert.assertEquals("Custom tokens resolve fallbacks", "answer-literal", resolver.resolve("{{ nope | actual }}-{{ nope | 'literal' }}", testProps));
+    }
+
+    @Test
+    public void testOverlappingStartTokens() {
+        final Map<String, String> testProps = new HashMap<>();
+        testProps.put("x", "1");
+        final DefaultStringResolver resolver = new DefaultStringResolver();
+        Assert.assertEquals("Overlapping default start tokens", "$1", resolver.resolve("$${x}", testProps));
+        resolver.setStartToken("{{");
+        resolver.setEndToken("}}");
+        Assert.assertEquals("Innermost start token opens the token", "{1}", resolver.resolve("{{{x}}}", testProps));
+        Assert.assertEquals("Innermost start token opens the token with more braces", "{{1}}", resolver.resolve("{{{{x}}}}", testProps));
+        Assert.assertEquals("Nested custom tokens after overlap", "{1-1}", resolver.resolve("{{{x}}-{{x}}}", testProps));
+    }
+
+    @Test
+    public void testRepeatedTemplate() {
+        final Map<String, String> testProps = new HashMap<>();
+        testProps.put("one", "1");
+        final DefaultStringResolver resolver = new DefaultStringResolver();
+        for (int i = 0; i < 10; i++) {
+            testProps.put("two", String.valueOf(i));
+            Assert.assertEquals("Repeated template resolves against current properties", "1-" + i + "-1", resolver.resolve("${one}-${two}-${one}", testProps));
+        }
+        // the compiled template is kept and reused until the tokens change
+        final Template compiled = resolver.template("${one}-${two}-${one}");
+        Assert.assertSame(compiled, resolver.template("${one}-${two}-${one}"));
+        resolver.setStartToken("{{");
+        Assert.assertNotSame(compiled, resolver.template("${one}-${two}-${one}"));
+    }
+
+    @Test
+    public void testNestedLiterals() {
+        final Map<String, String> testProps = new HashMap<>();
+        testProps.put("c", "see");
+        testProps.put("b", "bee");
+        testProps.put("self", "${ self }");
+        final DefaultStringResolver resolver = new DefaultStringResolver();
+        Assert.assertEquals("Innermost literal is used", "x-see", resolver.resolve("${ a | 'x-${ nope | '${c}' }' }", testProps));
+        Assert.assertEquals("Nested key is used before the literal", "x-bee", resolver.resolve("${ a | 'x-${ b | '${c}' }' }", testProps));
+        Assert.assertEquals("Unresolved nested token leaves the outer token", "${ a | 'x-${ nope }' }", resolver.resolve("${ a | 'x-${ nope }' }", testProps));
+        Assert.assertEquals("Self reference with spaces is guarded", "${ self }", resolver.resolve("${ self }", testProps));
+        Assert.assertEquals("Unbalanced tokens are left as they are", "${see} ${", resolver.resolve("${${c}} ${", testProps));
+
+        resolver.setStartToken("{{");
+        resolver.setEndToken("}}");
+        Assert.assertEquals("Custom tokens nest", "x-see ${c}", resolver.resolve("{{ a | 'x-{{ nope | '{{c}}' }}' }} ${c}", testProps));
+    }
+
+    @Test
+    public void testLongTemplate() {
+        final Map<String, String> testProps = new HashMap<>();
+        testProps.put("key", "value");
+        final StringBuilder input = new StringBuilder();
+        final StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            input.append("${ missing").append(i).append(" | '${key}' }/");
+            expected.append("value/");
+        }
+        final DefaultStringResolver resolver = new DefaultStringResolver();
+        Assert.assertEquals("Every nested token is resolved", expected.toString(), resolver.resolve(input.toString(), testProps));
+    }
 }